@@ -0,0 +1,206 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.universAAL.middleware.service.CallStatus;
+import org.universAAL.middleware.service.ServiceResponse;
+import org.universAAL.middleware.service.owls.process.ProcessOutput;
+
+/**
+ * Limits the number of calls a Service Callee handles at once, in total and
+ * for each of its process URIs, so that a slow service can not pile up
+ * blocked calls in the threads of the bus. A call that finds no room waits a
+ * short time for it, and is rejected if it is still not available: the callee
+ * should then answer straight away with the response of
+ * <code>rejected()</code>.
+ * <p/>
+ * Example: Handling a call within the limits.
+ * <code>
+ * <p/>if (!bulkhead.enter(call.getProcessURI())) {
+ * <p/>	return Bulkhead.rejected();
+ * <p/>}
+ * <p/>try {
+ * <p/>	return handle(call);
+ * <p/>} finally {
+ * <p/>	bulkhead.exit(call.getProcessURI());
+ * <p/>}
+ * </code>
+ * <p/>
+ *
+ * @author alfiva
+ *
+ */
+public class Bulkhead {
+
+	/**
+	 * Room for the calls to the whole callee.
+	 */
+	private final Semaphore total;
+	/**
+	 * Room for the calls to each process URI, created as they are called.
+	 */
+	private final ConcurrentHashMap<String, Semaphore> perProcess = new ConcurrentHashMap<String, Semaphore>();
+	/**
+	 * Maximum number of calls to each process URI, or 0 if unlimited.
+	 */
+	private final int maxCallsPerProcess;
+	/**
+	 * Time in milliseconds a call waits for room.
+	 */
+	private final long maxWait;
+	/**
+	 * Number of calls being handled.
+	 */
+	private final AtomicInteger inFlight = new AtomicInteger();
+	/**
+	 * Number of calls rejected for lack of room.
+	 */
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxCalls
+	 *            Maximum number of calls handled at once by the callee.
+	 * @param maxCallsPerProcess
+	 *            Maximum number of calls handled at once for each process URI,
+	 *            or 0 to limit only the total.
+	 * @param maxWait
+	 *            Time in milliseconds a call waits for room before being
+	 *            rejected. Keep it short: the waiting call holds a thread of
+	 *            the bus.
+	 */
+	public Bulkhead(int maxCalls, int maxCallsPerProcess, long maxWait) {
+		this.total = new Semaphore(maxCalls);
+		this.maxCallsPerProcess = maxCallsPerProcess;
+		this.maxWait = maxWait;
+	}
+
+	/**
+	 * Take room for a call. If it returns <code>true</code>,
+	 * <code>exit()</code> must be called with the same process URI when the
+	 * call is handled.
+	 *
+	 * @param processURI
+	 *            The process URI of the call, or null to limit only the total.
+	 * @return <code>true</code> if the call can be handled, <code>false</code>
+	 *         if it must be rejected.
+	 */
+	public boolean enter(String processURI) {
+		long deadline = System.currentTimeMillis() + maxWait;
+		try {
+			if (!total.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+				rejected.incrementAndGet();
+				return false;
+			}
+			Semaphore process = getProcess(processURI);
+			if (process != null && !process.tryAcquire(Math.max(0, deadline - System.currentTimeMillis()),
+					TimeUnit.MILLISECONDS)) {
+				total.release();
+				rejected.incrementAndGet();
+				return false;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			rejected.incrementAndGet();
+			return false;
+		}
+		inFlight.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Give back the room of a call handled after <code>enter()</code> returned
+	 * <code>true</code>.
+	 *
+	 * @param processURI
+	 *            The process URI given to <code>enter()</code>.
+	 */
+	public void exit(String processURI) {
+		inFlight.decrementAndGet();
+		Semaphore process = getProcess(processURI);
+		if (process != null) {
+			process.release();
+		}
+		total.release();
+	}
+
+	/**
+	 * Get the number of calls being handled.
+	 *
+	 * @return Number of calls in flight.
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * Get the number of calls rejected for lack of room.
+	 *
+	 * @return Number of rejected calls.
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * Get the response to a rejected call.
+	 *
+	 * @return A new response with <code>serviceSpecificFailure</code> call
+	 *         status.
+	 */
+	public static ServiceResponse rejected() {
+		ServiceResponse response = new ServiceResponse(CallStatus.serviceSpecificFailure);
+		response.addOutput(new ProcessOutput(ServiceResponse.PROP_SERVICE_SPECIFIC_ERROR,
+				"The service is busy handling other calls"));
+		return response;
+	}
+
+	/**
+	 * Get the room for the calls to a process URI, creating it the first time.
+	 *
+	 * @param processURI
+	 *            The process URI.
+	 * @return The room, or null if calls to process URIs are not limited.
+	 */
+	private Semaphore getProcess(String processURI) {
+		if (processURI == null || maxCallsPerProcess <= 0) {
+			return null;
+		}
+		Semaphore s = perProcess.get(processURI);
+		if (s == null) {
+			Semaphore created = new Semaphore(maxCallsPerProcess);
+			s = perProcess.putIfAbsent(processURI, created);
+			if (s == null) {
+				s = created;
+			}
+		}
+		return s;
+	}
+
+}
@@ -0,0 +1,374 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.universAAL.middleware.service.CallStatus;
+import org.universAAL.middleware.service.ServiceResponse;
+import org.universAAL.middleware.service.owls.process.ProcessOutput;
+
+/**
+ * Stops calling services that are failing, to be used by
+ * <code>UAAL.callS()</code>. Calls are grouped by a key, by default the URI
+ * of the requested class of service. Each key has a circuit that is normally
+ * CLOSED, letting calls through. After a number of consecutive failures (no
+ * matching service, time outs) it becomes OPEN: calls are rejected straight
+ * away instead of waiting for the Service Bus. Once the open time passes it
+ * becomes HALF_OPEN and lets a single trial call through: if it succeeds the
+ * circuit is CLOSED again, and otherwise it is OPEN again.
+ * <p/>
+ * Each admitted call gets a ticket of the state it was admitted in, so that
+ * calls that end after the circuit changed state, e.g. slow calls admitted
+ * before it opened, do not affect the new state.
+ * <p/>
+ * A {@link Listener} can be set to know when circuits change state, e.g. to
+ * report which classes of service are degraded.
+ *
+ * @author alfiva
+ *
+ */
+public class CircuitBreaker {
+
+	/**
+	 * The states of a circuit.
+	 */
+	public enum State {
+		/**
+		 * Calls are let through.
+		 */
+		CLOSED,
+		/**
+		 * Calls are rejected.
+		 */
+		OPEN,
+		/**
+		 * A single trial call is let through.
+		 */
+		HALF_OPEN
+	}
+
+	/**
+	 * Receiver of the changes of state of the circuits.
+	 */
+	public interface Listener {
+		/**
+		 * Called, from the thread of the call that caused it, when a circuit
+		 * changes state.
+		 *
+		 * @param key
+		 *            The key of the circuit.
+		 * @param from
+		 *            The previous state.
+		 * @param to
+		 *            The new state.
+		 */
+		void stateChanged(String key, State from, State to);
+	}
+
+	/**
+	 * The ticket returned by <code>allow()</code> when a call is rejected.
+	 */
+	public static final long REJECTED = -1;
+
+	/**
+	 * The circuit of each key, created as they are called.
+	 */
+	private final ConcurrentHashMap<String, Circuit> circuits = new ConcurrentHashMap<String, Circuit>();
+	/**
+	 * Number of consecutive failures that open a circuit.
+	 */
+	private final int maxFailures;
+	/**
+	 * Time in milliseconds a circuit stays open before a trial call.
+	 */
+	private final long openTime;
+	/**
+	 * Receiver of the changes of state, or null.
+	 */
+	private volatile Listener listener;
+	/**
+	 * Number of calls rejected by open circuits.
+	 */
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxFailures
+	 *            Number of consecutive failures that open a circuit.
+	 * @param openTime
+	 *            Time in milliseconds a circuit stays open before letting a
+	 *            trial call through.
+	 */
+	public CircuitBreaker(int maxFailures, long openTime) {
+		this.maxFailures = maxFailures;
+		this.openTime = openTime;
+	}
+
+	/**
+	 * Set the receiver of the changes of state of the circuits.
+	 *
+	 * @param l
+	 *            The receiver, or null to remove it.
+	 */
+	public void setListener(Listener l) {
+		this.listener = l;
+	}
+
+	/**
+	 * Tell if a call can be made. If it can, <code>record()</code> or
+	 * <code>cancel()</code> must be called afterwards with the same key and
+	 * the returned ticket.
+	 *
+	 * @param key
+	 *            The key of the call.
+	 * @return The ticket of the call if it can be made, or
+	 *         <code>REJECTED</code> if it must be rejected.
+	 */
+	public long allow(String key) {
+		Circuit c = getCircuit(key);
+		State from;
+		State to;
+		long ticket;
+		synchronized (c) {
+			from = c.state;
+			if (c.state == State.OPEN && System.currentTimeMillis() - c.opened >= openTime) {
+				c.change(State.HALF_OPEN);
+			}
+			to = c.state;
+			boolean allowed = c.state == State.CLOSED || (c.state == State.HALF_OPEN && !c.trial);
+			if (c.state == State.HALF_OPEN && allowed) {
+				c.trial = true;
+			}
+			if (allowed) {
+				ticket = c.generation;
+			} else {
+				rejected.incrementAndGet();
+				ticket = REJECTED;
+			}
+		}
+		fireStateChanged(key, from, to);
+		return ticket;
+	}
+
+	/**
+	 * Record the outcome of a call allowed by <code>allow()</code>. The call
+	 * failed if there was no response, no matching service or it timed out;
+	 * any other response means the service is available. The outcome is
+	 * ignored if the circuit changed state since the call was allowed.
+	 *
+	 * @param key
+	 *            The key of the call.
+	 * @param ticket
+	 *            The ticket returned by <code>allow()</code>.
+	 * @param response
+	 *            The response of the call, or null if there was none.
+	 */
+	public void record(String key, long ticket, ServiceResponse response) {
+		CallStatus status = response == null ? null : response.getCallStatus();
+		boolean failed = status == null || status == CallStatus.noMatchingServiceFound
+				|| status == CallStatus.responseTimedOut;
+		Circuit c = getCircuit(key);
+		State from;
+		State to;
+		synchronized (c) {
+			if (ticket != c.generation) {
+				return;
+			}
+			from = c.state;
+			if (!failed) {
+				c.failures = 0;
+				c.change(State.CLOSED);
+			} else if (c.state == State.HALF_OPEN || ++c.failures >= maxFailures) {
+				c.change(State.OPEN);
+				c.opened = System.currentTimeMillis();
+			}
+			to = c.state;
+		}
+		fireStateChanged(key, from, to);
+	}
+
+	/**
+	 * Give up a call allowed by <code>allow()</code> without an outcome, e.g.
+	 * because it was cancelled. It does not count as a success nor as a
+	 * failure, but if it was the trial call of a half open circuit, another
+	 * trial call is let through.
+	 *
+	 * @param key
+	 *            The key of the call.
+	 * @param ticket
+	 *            The ticket returned by <code>allow()</code>.
+	 */
+	public void cancel(String key, long ticket) {
+		Circuit c = getCircuit(key);
+		synchronized (c) {
+			if (ticket == c.generation && c.state == State.HALF_OPEN) {
+				c.trial = false;
+			}
+		}
+	}
+
+	/**
+	 * Get the state of the circuit of a key.
+	 *
+	 * @param key
+	 *            The key.
+	 * @return The state, CLOSED if the key was never called.
+	 */
+	public State getState(String key) {
+		Circuit c = circuits.get(key);
+		if (c == null) {
+			return State.CLOSED;
+		}
+		synchronized (c) {
+			return c.state;
+		}
+	}
+
+	/**
+	 * Get the state of all the circuits that are not closed.
+	 *
+	 * @return The states by key.
+	 */
+	public Map<String, State> getDegraded() {
+		Map<String, State> degraded = new HashMap<String, State>();
+		Iterator<Map.Entry<String, Circuit>> iter = circuits.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry<String, Circuit> entry = iter.next();
+			State s;
+			synchronized (entry.getValue()) {
+				s = entry.getValue().state;
+			}
+			if (s != State.CLOSED) {
+				degraded.put(entry.getKey(), s);
+			}
+		}
+		return degraded;
+	}
+
+	/**
+	 * Get the number of calls rejected by open circuits.
+	 *
+	 * @return Number of rejected calls.
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * Get the response to a rejected call.
+	 *
+	 * @param key
+	 *            The key of the call.
+	 * @return A new response with <code>serviceSpecificFailure</code> call
+	 *         status.
+	 */
+	public static ServiceResponse rejected(String key) {
+		ServiceResponse response = new ServiceResponse(CallStatus.serviceSpecificFailure);
+		response.addOutput(new ProcessOutput(ServiceResponse.PROP_SERVICE_SPECIFIC_ERROR,
+				"The service is not called because it is failing: " + key));
+		return response;
+	}
+
+	/**
+	 * Get the circuit of a key, creating it the first time.
+	 *
+	 * @param key
+	 *            The key.
+	 * @return The circuit.
+	 */
+	private Circuit getCircuit(String key) {
+		Circuit c = circuits.get(key);
+		if (c == null) {
+			Circuit created = new Circuit();
+			c = circuits.putIfAbsent(key, created);
+			if (c == null) {
+				c = created;
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Tell the listener about a change of state, if there was one.
+	 *
+	 * @param key
+	 *            The key of the circuit.
+	 * @param from
+	 *            The previous state.
+	 * @param to
+	 *            The new state.
+	 */
+	private void fireStateChanged(String key, State from, State to) {
+		Listener l = listener;
+		if (l != null && from != to) {
+			l.stateChanged(key, from, to);
+		}
+	}
+
+	/**
+	 * The state of the calls of a key.
+	 */
+	private static final class Circuit {
+		/**
+		 * The state.
+		 */
+		private State state = State.CLOSED;
+		/**
+		 * Number of consecutive failures.
+		 */
+		private int failures = 0;
+		/**
+		 * Time in milliseconds when the circuit was opened.
+		 */
+		private long opened = 0;
+		/**
+		 * Whether the trial call of the half open circuit is in progress.
+		 */
+		private boolean trial = false;
+		/**
+		 * Number of changes of state, given as ticket to the calls allowed.
+		 */
+		private long generation = 0;
+
+		/**
+		 * Change the state, starting a new generation of calls if it is
+		 * different.
+		 *
+		 * @param to
+		 *            The new state.
+		 */
+		private void change(State to) {
+			if (state != to) {
+				state = to;
+				generation++;
+				trial = false;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,382 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+
+import org.universAAL.middleware.container.ModuleContext;
+import org.universAAL.middleware.container.utils.LogUtils;
+import org.universAAL.middleware.context.ContextEvent;
+import org.universAAL.utilities.api.context.EventKey;
+
+/**
+ * An ICListener that passes the received events to another ICListener
+ * asynchronously, through its own bounded queue and worker threads. This way
+ * the thread that delivers the events (usually the one of the Context Bus) is
+ * not held by a slow listener. What happens when the queue is full is
+ * determined by its {@link Overflow} policy.
+ * <p>
+ * The queue keeps some figures that can be used to size it: the current
+ * depth, the number of dropped and coalesced events, and the time spent by
+ * the listener handling them.
+ * <p>
+ * Example: <code>
+ * <p/>DispatchQueue q = u.subscribeC(patterns, myListener, DispatchQueue.Overflow.DROP_OLDEST, 100, 1);
+ * </code>
+ *
+ * @author alfiva
+ *
+ */
+public class DispatchQueue implements ICListener {
+
+	/**
+	 * What to do with a received event when the queue is full.
+	 */
+	public enum Overflow {
+		/**
+		 * Wait until there is room in the queue. This holds the delivering
+		 * thread.
+		 */
+		BLOCK,
+		/**
+		 * Discard the oldest event in the queue to make room.
+		 */
+		DROP_OLDEST,
+		/**
+		 * Discard the received event.
+		 */
+		DROP_NEWEST,
+		/**
+		 * Replace the newest queued event about the same subject and
+		 * predicate, if any, keeping its place in the queue. Otherwise discard
+		 * the oldest event in the queue to make room.
+		 */
+		COALESCE
+	}
+
+	/**
+	 * The universAAL module context, for logging.
+	 */
+	private final ModuleContext context;
+	/**
+	 * The listener that handles the events.
+	 */
+	private final ICListener listener;
+	/**
+	 * The overflow policy.
+	 */
+	private final Overflow overflow;
+	/**
+	 * Maximum number of events in the queue.
+	 */
+	private final int capacity;
+	/**
+	 * The queued events.
+	 */
+	private final LinkedList<Slot> queue = new LinkedList<Slot>();
+	/**
+	 * The newest queued event of each key, only when coalescing.
+	 */
+	private final HashMap<String, Slot> queued;
+	/**
+	 * The threads that pass the queued events to the listener.
+	 */
+	private final Thread[] workers;
+	/**
+	 * Whether the queue has been closed.
+	 */
+	private boolean closed = false;
+	/**
+	 * Number of discarded events.
+	 */
+	private long dropped = 0;
+	/**
+	 * Number of events replaced by a newer one.
+	 */
+	private long coalesced = 0;
+	/**
+	 * Number of events handled by the listener.
+	 */
+	private long delivered = 0;
+	/**
+	 * Total time in nanoseconds spent by the listener.
+	 */
+	private long latencyTotal = 0;
+	/**
+	 * Maximum time in nanoseconds spent by the listener in a single event.
+	 */
+	private long latencyMax = 0;
+
+	/**
+	 * Create a queue in front of a listener and start its worker threads.
+	 *
+	 * @param context
+	 *            The universAAL module context, for logging.
+	 * @param l
+	 *            The listener that will handle the events.
+	 * @param overflow
+	 *            What to do with a received event when the queue is full.
+	 * @param capacity
+	 *            Maximum number of events in the queue. Must be greater than
+	 *            zero.
+	 * @param threads
+	 *            Number of worker threads passing events to the listener.
+	 *            With more than one, the listener must be thread-safe and the
+	 *            events may be handled out of order. Must be greater than zero.
+	 * @throws IllegalArgumentException
+	 *             If the capacity or the number of threads is not greater than
+	 *             zero.
+	 */
+	public DispatchQueue(ModuleContext context, ICListener l, Overflow overflow, int capacity, int threads) {
+		if (capacity <= 0 || threads <= 0) {
+			throw new IllegalArgumentException("Invalid capacity " + capacity + " or threads " + threads);
+		}
+		this.context = context;
+		this.listener = l;
+		this.overflow = overflow;
+		this.capacity = capacity;
+		this.queued = overflow == Overflow.COALESCE ? new HashMap<String, Slot>() : null;
+		this.workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread(new Runnable() {
+				public void run() {
+					work();
+				}
+			}, "UAAL-dispatch");
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.universAAL.utilities.api.ICListener#handleContextEvent(org.universAAL
+	 * .middleware.context.ContextEvent)
+	 */
+	public void handleContextEvent(ContextEvent event) {
+		String key = queued == null ? null : EventKey.of(event);
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			while (queue.size() >= capacity) {
+				switch (overflow) {
+				case BLOCK:
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						dropped++;
+						return;
+					}
+					if (closed) {
+						return;
+					}
+					break;
+				case DROP_NEWEST:
+					dropped++;
+					return;
+				case COALESCE:
+					Slot same = queued.get(key);
+					if (same != null) {
+						same.event = event;
+						coalesced++;
+						return;
+					}
+					dropOldest();
+					break;
+				default:
+					dropOldest();
+				}
+			}
+			Slot slot = new Slot(key, event);
+			queue.addLast(slot);
+			if (key != null) {
+				queued.put(key, slot);
+			}
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Loop of the worker threads: take the next event and pass it to the
+	 * listener, until the queue is closed.
+	 */
+	private void work() {
+		while (true) {
+			ContextEvent event;
+			synchronized (this) {
+				while (queue.isEmpty() && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (closed) {
+					return;
+				}
+				event = take().event;
+				notifyAll();
+			}
+			long start = System.nanoTime();
+			try {
+				listener.handleContextEvent(event);
+			} catch (RuntimeException e) {
+				LogUtils.logError(context, getClass(), "work", new Object[] { "The listener failed handling an event" },
+						e);
+			}
+			long time = System.nanoTime() - start;
+			synchronized (this) {
+				delivered++;
+				latencyTotal += time;
+				if (time > latencyMax) {
+					latencyMax = time;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Discard the oldest event in the queue. To be called with the lock held.
+	 */
+	private void dropOldest() {
+		take();
+		dropped++;
+	}
+
+	/**
+	 * Remove the oldest event from the queue. To be called with the lock held.
+	 *
+	 * @return The slot of the event.
+	 */
+	private Slot take() {
+		Slot slot = queue.removeFirst();
+		// Only if no newer event with the same key is queued
+		if (slot.key != null && queued.get(slot.key) == slot) {
+			queued.remove(slot.key);
+		}
+		return slot;
+	}
+
+	/**
+	 * Stop the worker threads. Events still in the queue are discarded, and
+	 * further received events are ignored.
+	 */
+	public void close() {
+		synchronized (this) {
+			closed = true;
+			queue.clear();
+			if (queued != null) {
+				queued.clear();
+			}
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Get the number of events currently waiting in the queue.
+	 *
+	 * @return The depth of the queue.
+	 */
+	public synchronized int getDepth() {
+		return queue.size();
+	}
+
+	/**
+	 * Get the number of events discarded because the queue was full.
+	 *
+	 * @return Number of dropped events.
+	 */
+	public synchronized long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Get the number of events replaced in the queue by a newer event about
+	 * the same subject and predicate. Only when the policy is COALESCE and the
+	 * queue was full.
+	 *
+	 * @return Number of coalesced events.
+	 */
+	public synchronized long getCoalesced() {
+		return coalesced;
+	}
+
+	/**
+	 * Get the number of events handled by the listener.
+	 *
+	 * @return Number of delivered events.
+	 */
+	public synchronized long getDelivered() {
+		return delivered;
+	}
+
+	/**
+	 * Get the average time spent by the listener handling an event.
+	 *
+	 * @return The average latency in nanoseconds.
+	 */
+	public synchronized long getAverageLatency() {
+		return delivered == 0 ? 0 : latencyTotal / delivered;
+	}
+
+	/**
+	 * Get the maximum time spent by the listener handling an event.
+	 *
+	 * @return The maximum latency in nanoseconds.
+	 */
+	public synchronized long getMaxLatency() {
+		return latencyMax;
+	}
+
+	/**
+	 * A queued event. When coalescing, it can be replaced by a newer one.
+	 */
+	private static final class Slot {
+		/**
+		 * The key of the event, only when coalescing.
+		 */
+		private final String key;
+		/**
+		 * The event.
+		 */
+		private ContextEvent event;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param key
+		 *            The key of the event, only when coalescing.
+		 * @param event
+		 *            The event.
+		 */
+		private Slot(String key, ContextEvent event) {
+			this.key = key;
+			this.event = event;
+		}
+	}
+
+}
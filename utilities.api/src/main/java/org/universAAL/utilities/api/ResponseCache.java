@@ -0,0 +1,481 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.universAAL.middleware.context.ContextEvent;
+import org.universAAL.middleware.context.ContextEventPattern;
+import org.universAAL.middleware.owl.ManagedIndividual;
+import org.universAAL.middleware.rdf.Resource;
+import org.universAAL.middleware.service.CallStatus;
+import org.universAAL.middleware.service.ServiceRequest;
+import org.universAAL.middleware.service.ServiceResponse;
+import org.universAAL.middleware.service.owl.Service;
+import org.universAAL.utilities.api.context.PatternIndex;
+
+/**
+ * Bounded cache of the responses to read-only Service Requests, to be used by
+ * <code>UAAL.callSCached()</code>. Requests are identified by a canonical
+ * form of their content, so that two requests built the same way get the same
+ * cached response. Only successful responses to requests without
+ * effects are kept, each for the time to live given when calling. When full,
+ * the least recently used response is evicted.
+ * <p/>
+ * Responses may also be bound to Context Event Patterns describing the
+ * changes that make them stale. The cache is an ICListener: when it receives
+ * an event matching any of these patterns, the bound responses are removed
+ * straight away. In addition, when a request with effects succeeds, the
+ * responses to requests for the same class of service are removed, since
+ * they may have changed.
+ * <p/>
+ * Cached responses are shared by all callers of the same request, so they
+ * must not be modified.
+ *
+ * @author alfiva
+ *
+ */
+public class ResponseCache implements ICListener {
+
+	/**
+	 * The cached responses by canonical request, in access order.
+	 */
+	private final LinkedHashMap<String, Cached> cache;
+	/**
+	 * Canonical requests by the patterns that invalidate their responses.
+	 */
+	private final PatternIndex<String> bindings = new PatternIndex<String>();
+	/**
+	 * Canonical requests bound to patterns, each mapped to the instance held
+	 * by the index, which removes values by identity.
+	 */
+	private final HashMap<String, String> bound = new HashMap<String, String>();
+	/**
+	 * Canonical forms of the sets of patterns the cache is subscribed to.
+	 */
+	private final HashSet<String> subscribed = new HashSet<String>();
+	/**
+	 * Maximum number of cached responses.
+	 */
+	private final int maxEntries;
+	/**
+	 * Number of requests answered from the cache.
+	 */
+	private long hits = 0;
+	/**
+	 * Number of requests not found in the cache.
+	 */
+	private long misses = 0;
+	/**
+	 * Number of responses evicted to make room for others.
+	 */
+	private long evictions = 0;
+	/**
+	 * Number of responses removed because they became stale.
+	 */
+	private long invalidations = 0;
+
+	/**
+	 * Create an empty cache.
+	 *
+	 * @param maxEntries
+	 *            Maximum number of cached responses.
+	 */
+	public ResponseCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+		this.cache = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+				if (size() > ResponseCache.this.maxEntries) {
+					evictions++;
+					unbind(eldest.getKey());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Get the cached response to a request.
+	 *
+	 * @param key
+	 *            The canonical form of the request, see <code>key()</code>.
+	 * @return The response, or null if there is none or it expired.
+	 */
+	public synchronized ServiceResponse get(String key) {
+		Cached c = cache.get(key);
+		if (c != null && c.expires < System.currentTimeMillis()) {
+			cache.remove(key);
+			unbind(key);
+			c = null;
+		}
+		if (c == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return c.response;
+	}
+
+	/**
+	 * Keep the response to a request, if it can be cached.
+	 *
+	 * @param key
+	 *            The canonical form of the request, see <code>key()</code>.
+	 * @param request
+	 *            The request.
+	 * @param response
+	 *            The response to the request.
+	 * @param ttl
+	 *            Time in milliseconds during which the response is valid.
+	 * @return <code>true</code> if it was cached: the response is successful
+	 *         and the request has no effects.
+	 */
+	public boolean put(String key, ServiceRequest request, ServiceResponse response, long ttl) {
+		if (!isCacheable(request, response)) {
+			return false;
+		}
+		Service s = request.getRequestedService();
+		Cached c = new Cached(response, System.currentTimeMillis() + ttl, s == null ? null : s.getClassURI());
+		synchronized (this) {
+			cache.put(key, c);
+		}
+		return true;
+	}
+
+	/**
+	 * Bind the cached response to a request to the patterns of the events that
+	 * make it stale. The binding lasts until the response is removed from the
+	 * cache. The cache needs to be subscribed only once to each distinct set
+	 * of patterns, however many requests are bound to it.
+	 *
+	 * @param key
+	 *            The canonical form of the request, see <code>key()</code>.
+	 * @param patterns
+	 *            The patterns of the invalidating events.
+	 * @return <code>true</code> if the cache is not yet subscribed to this set
+	 *         of patterns, and must now be subscribed to them.
+	 */
+	public boolean bind(String key, ContextEventPattern[] patterns) {
+		StringBuffer buf = new StringBuffer(256);
+		for (int i = 0; i < patterns.length; i++) {
+			writeValue(patterns[i], buf, new IdentityHashMap<Object, Object>());
+		}
+		synchronized (this) {
+			// Responses not cached, or already bound, need no binding
+			if (cache.containsKey(key) && !bound.containsKey(key)) {
+				bound.put(key, key);
+				bindings.add(patterns, key);
+			}
+			return subscribed.add(buf.toString());
+		}
+	}
+
+	/**
+	 * Forget the subscriptions of the cache, so that the sets of patterns are
+	 * subscribed again by the next bindings. The responses bound to patterns
+	 * are removed too, since no event will invalidate them any more. To be
+	 * called when the subscriptions of the cache are closed.
+	 */
+	public synchronized void clearSubscriptions() {
+		subscribed.clear();
+		Iterator<String> iter = bound.keySet().iterator();
+		while (iter.hasNext()) {
+			String key = iter.next();
+			cache.remove(key);
+			bindings.remove(bound.get(key));
+			iter.remove();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.universAAL.utilities.api.ICListener#handleContextEvent(org.universAAL
+	 * .middleware.context.ContextEvent)
+	 */
+	public void handleContextEvent(ContextEvent event) {
+		List<String> stale = bindings.match(event);
+		if (stale.isEmpty()) {
+			return;
+		}
+		synchronized (this) {
+			for (int i = 0; i < stale.size(); i++) {
+				if (cache.remove(stale.get(i)) != null) {
+					invalidations++;
+				}
+				unbind(stale.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Remove the responses that a successful request may have made stale:
+	 * those to requests for the same class of service. Requests without
+	 * effects do not remove anything.
+	 *
+	 * @param request
+	 *            The request that succeeded.
+	 * @return The number of removed responses.
+	 */
+	public int invalidate(ServiceRequest request) {
+		Resource[] effects = request.getRequiredEffects();
+		Service s = request.getRequestedService();
+		if (effects == null || effects.length == 0 || s == null) {
+			return 0;
+		}
+		String type = s.getClassURI();
+		int removed = 0;
+		synchronized (this) {
+			Iterator<Map.Entry<String, Cached>> iter = cache.entrySet().iterator();
+			while (iter.hasNext()) {
+				Map.Entry<String, Cached> entry = iter.next();
+				if (type == null || type.equals(entry.getValue().serviceType)) {
+					iter.remove();
+					unbind(entry.getKey());
+					removed++;
+				}
+			}
+			invalidations += removed;
+		}
+		return removed;
+	}
+
+	/**
+	 * Remove all the cached responses.
+	 */
+	public synchronized void clear() {
+		Iterator<String> iter = cache.keySet().iterator();
+		while (iter.hasNext()) {
+			unbind(iter.next());
+		}
+		cache.clear();
+	}
+
+	/**
+	 * Remove the binding of a request to its patterns, if any. Must be called
+	 * while holding the lock of the cache.
+	 *
+	 * @param key
+	 *            The canonical form of the request.
+	 */
+	private void unbind(String key) {
+		String instance = bound.remove(key);
+		if (instance != null) {
+			bindings.remove(instance);
+		}
+	}
+
+	/**
+	 * Get the number of cached responses, including the expired ones not yet
+	 * removed.
+	 *
+	 * @return Number of responses.
+	 */
+	public synchronized int size() {
+		return cache.size();
+	}
+
+	/**
+	 * Get the number of requests answered from the cache.
+	 *
+	 * @return Number of hits.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Get the number of requests not found in the cache.
+	 *
+	 * @return Number of misses.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Get the number of responses evicted to make room for others.
+	 *
+	 * @return Number of evictions.
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Get the number of responses removed because they became stale, by a
+	 * matching event or a request with effects.
+	 *
+	 * @return Number of invalidations.
+	 */
+	public synchronized long getInvalidations() {
+		return invalidations;
+	}
+
+	/**
+	 * Tell if a response can be cached.
+	 *
+	 * @param request
+	 *            The request.
+	 * @param response
+	 *            The response to the request.
+	 * @return <code>true</code> if the response is successful and the request
+	 *         has no effects.
+	 */
+	private static boolean isCacheable(ServiceRequest request, ServiceResponse response) {
+		if (response == null || response.getCallStatus() != CallStatus.succeeded) {
+			return false;
+		}
+		Resource[] effects = request.getRequiredEffects();
+		return effects == null || effects.length == 0;
+	}
+
+	/**
+	 * Get the canonical form of a request: its properties, sorted, with the
+	 * values written recursively. Named resources are written as their URI
+	 * followed by their properties, so that the same instance with different
+	 * content gives a different key, while the random URIs of anonymous
+	 * resources are skipped and only their properties are written.
+	 *
+	 * @param request
+	 *            The request.
+	 * @return The canonical form, equal for requests with the same content.
+	 */
+	public static String key(ServiceRequest request) {
+		StringBuffer buf = new StringBuffer(256);
+		writeProperties(request, buf, new IdentityHashMap<Object, Object>());
+		return buf.toString();
+	}
+
+	/**
+	 * Write the properties of a resource, sorted by URI.
+	 *
+	 * @param r
+	 *            The resource.
+	 * @param buf
+	 *            Where to write.
+	 * @param visited
+	 *            Resources already being written, to avoid cycles.
+	 */
+	private static void writeProperties(Resource r, StringBuffer buf, IdentityHashMap<Object, Object> visited) {
+		visited.put(r, r);
+		List<String> props = new ArrayList<String>();
+		Enumeration<?> e = r.getPropertyURIs();
+		while (e != null && e.hasMoreElements()) {
+			props.add((String) e.nextElement());
+		}
+		Collections.sort(props);
+		buf.append('[');
+		for (int i = 0; i < props.size(); i++) {
+			buf.append(props.get(i)).append('=');
+			writeValue(r.getProperty(props.get(i)), buf, visited);
+			buf.append(';');
+		}
+		buf.append(']');
+	}
+
+	/**
+	 * Write the value of a property.
+	 *
+	 * @param value
+	 *            The value.
+	 * @param buf
+	 *            Where to write.
+	 * @param visited
+	 *            Resources already being written, to avoid cycles.
+	 */
+	private static void writeValue(Object value, StringBuffer buf, IdentityHashMap<Object, Object> visited) {
+		if (value instanceof List) {
+			List<?> list = (List<?>) value;
+			buf.append('(');
+			for (int i = 0; i < list.size(); i++) {
+				writeValue(list.get(i), buf, visited);
+				buf.append(',');
+			}
+			buf.append(')');
+		} else if (value instanceof Resource) {
+			Resource r = (Resource) value;
+			if (!r.isAnon()) {
+				buf.append('<').append(r.getURI()).append('>');
+				if (!visited.containsKey(r) && r.numberOfProperties() > 0) {
+					writeProperties(r, buf, visited);
+				}
+			} else if (visited.containsKey(r)) {
+				buf.append("[^]");
+			} else {
+				writeProperties(r, buf, visited);
+			}
+		} else if (value != null) {
+			buf.append('"').append(value).append("\"^^").append(ManagedIndividual.getTypeURI(value));
+		}
+	}
+
+	/**
+	 * A cached response with its expiration time.
+	 */
+	private static final class Cached {
+		/**
+		 * The response.
+		 */
+		private final ServiceResponse response;
+		/**
+		 * Time in milliseconds after which the response is no longer valid.
+		 */
+		private final long expires;
+		/**
+		 * Class URI of the requested service.
+		 */
+		private final String serviceType;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param response
+		 *            The response.
+		 * @param expires
+		 *            Time in milliseconds after which the response is no
+		 *            longer valid.
+		 * @param serviceType
+		 *            Class URI of the requested service.
+		 */
+		private Cached(ServiceResponse response, long expires, String serviceType) {
+			this.response = response;
+			this.expires = expires;
+			this.serviceType = serviceType;
+		}
+	}
+
+}
@@ -0,0 +1,205 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.universAAL.middleware.service.CallStatus;
+import org.universAAL.middleware.service.ServiceCaller;
+import org.universAAL.middleware.service.ServiceRequest;
+import org.universAAL.middleware.service.ServiceResponse;
+
+/**
+ * Issues many Service Requests concurrently and gathers their responses
+ * within a global deadline, e.g. to query the status of all the sensors of a
+ * building in about the time of a single call. At most a given number of
+ * calls are in progress at once, and at most a given number wait for their
+ * turn: requests beyond that fail straight away. Calls still in progress at
+ * the deadline are interrupted. Responses can be consumed as they arrive
+ * through a {@link Listener}, and the requests that did not get a response
+ * before the deadline get one with <code>responseTimedOut</code> call status.
+ * <p/>
+ * Example: Get the status of many sensors.
+ * <code>
+ * <p/>ScatterGather sg = new ScatterGather(caller, 16, 256);
+ * <p/>ServiceResponse[] rs = sg.gather(requests, 2000, null);
+ * </code>
+ * <p/>
+ *
+ * @author alfiva
+ *
+ */
+public class ScatterGather {
+
+	/**
+	 * Receiver of the responses as they arrive.
+	 */
+	public interface Listener {
+		/**
+		 * Called, from the thread that performed the call, when a response
+		 * arrives before the deadline.
+		 *
+		 * @param index
+		 *            Position of the request in the gathered array.
+		 * @param request
+		 *            The request.
+		 * @param response
+		 *            The response to the request.
+		 */
+		void handleResponse(int index, ServiceRequest request, ServiceResponse response);
+	}
+
+	/**
+	 * The caller that performs the calls.
+	 */
+	private final ServiceCaller caller;
+	/**
+	 * The threads that perform the calls, as many as concurrent calls.
+	 */
+	private final ThreadPoolExecutor pool;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param caller
+	 *            The Service Caller that performs the calls.
+	 * @param concurrency
+	 *            Maximum number of calls in progress at once.
+	 * @param queue
+	 *            Maximum number of calls waiting for their turn.
+	 */
+	public ScatterGather(ServiceCaller caller, int concurrency, int queue) {
+		this.caller = caller;
+		this.pool = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(queue), new ThreadFactory() {
+					public Thread newThread(Runnable run) {
+						Thread t = new Thread(run, "UAAL-scatter-gather");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+	/**
+	 * Call all the requests concurrently and wait for their responses until
+	 * the deadline.
+	 *
+	 * @param requests
+	 *            The Service Requests.
+	 * @param timeout
+	 *            Maximum time in milliseconds to wait for all the responses.
+	 * @param l
+	 *            Receiver of each response as it arrives, or null.
+	 * @return The responses, in the same order as the requests. Those that did
+	 *         not arrive in time have <code>responseTimedOut</code> call
+	 *         status, and those whose call failed locally or found no room
+	 *         to wait for their turn have <code>serviceSpecificFailure</code>.
+	 */
+	public ServiceResponse[] gather(final ServiceRequest[] requests, long timeout, final Listener l) {
+		final long deadline = System.currentTimeMillis() + timeout;
+		final ServiceResponse[] responses = new ServiceResponse[requests.length];
+		final CountDownLatch done = new CountDownLatch(requests.length);
+		// Set once the results are returned, to ignore late responses
+		final boolean[] over = new boolean[] { false };
+		Future<?>[] futures = new Future<?>[requests.length];
+		for (int i = 0; i < requests.length; i++) {
+			final int index = i;
+			try {
+				futures[i] = pool.submit(new Runnable() {
+					public void run() {
+						try {
+							if (System.currentTimeMillis() >= deadline) {
+								return;
+							}
+							ServiceResponse r;
+							try {
+								r = call(requests[index]);
+							} catch (RuntimeException e) {
+								r = new ServiceResponse(CallStatus.serviceSpecificFailure);
+							}
+							synchronized (responses) {
+								if (over[0] || System.currentTimeMillis() > deadline) {
+									return;
+								}
+								responses[index] = r;
+							}
+							if (l != null) {
+								l.handleResponse(index, requests[index], r);
+							}
+						} finally {
+							done.countDown();
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				synchronized (responses) {
+					responses[index] = new ServiceResponse(CallStatus.serviceSpecificFailure);
+				}
+				done.countDown();
+			}
+		}
+		try {
+			done.await(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (int i = 0; i < futures.length; i++) {
+			// Calls not finished yet are not worth waiting for anymore
+			if (futures[i] != null) {
+				futures[i].cancel(true);
+			}
+		}
+		ServiceResponse[] result = new ServiceResponse[requests.length];
+		synchronized (responses) {
+			for (int i = 0; i < responses.length; i++) {
+				result[i] = responses[i] != null ? responses[i] : new ServiceResponse(CallStatus.responseTimedOut);
+			}
+			over[0] = true;
+		}
+		return result;
+	}
+
+	/**
+	 * Perform a single call. By default it is passed to the Service Caller.
+	 *
+	 * @param request
+	 *            The Service Request.
+	 * @return The response to the request.
+	 */
+	protected ServiceResponse call(ServiceRequest request) {
+		return caller.call(request);
+	}
+
+	/**
+	 * Stop the threads. Calls in progress are abandoned.
+	 */
+	public void close() {
+		pool.shutdownNow();
+	}
+
+}
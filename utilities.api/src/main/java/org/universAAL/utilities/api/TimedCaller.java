@@ -0,0 +1,309 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.universAAL.middleware.service.CallStatus;
+import org.universAAL.middleware.service.ServiceCaller;
+import org.universAAL.middleware.service.ServiceRequest;
+import org.universAAL.middleware.service.ServiceResponse;
+import org.universAAL.middleware.service.owls.process.ProcessOutput;
+
+/**
+ * Performs Service calls with a deadline, so that a missing or hung provider
+ * does not block the calling thread for longer than wanted. The call is made
+ * from a thread of this class while the caller waits up to the deadline; if
+ * there is no response by then, the caller gets one with
+ * <code>responseTimedOut</code> call status.
+ * <p/>
+ * Calls can also be hedged: if there is no response by the 95th percentile of
+ * the latency of recent calls, an identical request is sent and the first
+ * response to arrive is returned. This cuts the tail latency of calls at the
+ * cost of some duplicate calls, so it must only be used for requests without
+ * effects.
+ * <p/>
+ * The threads that perform the calls are bounded: a call that can not get one
+ * because all of them are taken by calls in progress (e.g. hung in a provider
+ * that does not answer) fails straight away instead of creating more.
+ *
+ * @author alfiva
+ *
+ */
+public class TimedCaller {
+
+	/**
+	 * Number of recent latencies kept to estimate the 95th percentile.
+	 */
+	public static final int SAMPLES = 128;
+	/**
+	 * Number of latencies needed before hedging calls.
+	 */
+	public static final int MIN_SAMPLES = 20;
+	/**
+	 * Minimum time in milliseconds to wait for a response before hedging.
+	 */
+	public static final long MIN_HEDGE_DELAY = 10;
+
+	/**
+	 * The caller that performs the calls.
+	 */
+	private final ServiceCaller caller;
+	/**
+	 * The threads that perform the calls.
+	 */
+	private final ThreadPoolExecutor pool;
+	/**
+	 * The latencies of recent successful calls, in milliseconds, as a ring.
+	 */
+	private final long[] latencies = new long[SAMPLES];
+	/**
+	 * Number of latencies recorded so far.
+	 */
+	private long recorded = 0;
+	/**
+	 * Number of calls that got no response by their deadline.
+	 */
+	private final AtomicLong timeouts = new AtomicLong();
+	/**
+	 * Number of duplicate requests sent by hedged calls.
+	 */
+	private final AtomicLong hedges = new AtomicLong();
+	/**
+	 * Number of hedged calls answered first by the duplicate request.
+	 */
+	private final AtomicLong hedgesWon = new AtomicLong();
+	/**
+	 * Number of calls that failed because there was no thread for them.
+	 */
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param caller
+	 *            The Service Caller that performs the calls.
+	 * @param maxThreads
+	 *            Maximum number of calls in progress at once, including those
+	 *            abandoned after their deadline that have not returned yet.
+	 */
+	public TimedCaller(ServiceCaller caller, int maxThreads) {
+		this.caller = caller;
+		// No queue: a call either gets a thread or is rejected
+		this.pool = new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new ThreadFactory() {
+					public Thread newThread(Runnable run) {
+						Thread t = new Thread(run, "UAAL-timed-caller");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+	/**
+	 * Call a Service and wait for its response until a deadline.
+	 *
+	 * @param r
+	 *            The Service Request.
+	 * @param timeout
+	 *            Maximum time in milliseconds to wait for the response.
+	 * @param hedge
+	 *            <code>true</code> to send a duplicate request if there is no
+	 *            response by the 95th percentile of the latency. Only for
+	 *            requests without effects.
+	 * @return The response, or one with <code>responseTimedOut</code> call
+	 *         status if it did not arrive in time, or with
+	 *         <code>serviceSpecificFailure</code> if the call failed locally
+	 *         or there was no free thread for it.
+	 */
+	public ServiceResponse call(ServiceRequest r, long timeout, boolean hedge) {
+		long start = System.currentTimeMillis();
+		long deadline = start + timeout;
+		ExecutorCompletionService<ServiceResponse> done = new ExecutorCompletionService<ServiceResponse>(pool);
+		Future<ServiceResponse> first;
+		try {
+			first = done.submit(task(r));
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			ServiceResponse response = new ServiceResponse(CallStatus.serviceSpecificFailure);
+			response.addOutput(new ProcessOutput(ServiceResponse.PROP_SERVICE_SPECIFIC_ERROR,
+					"Too many calls in progress"));
+			return response;
+		}
+		Future<ServiceResponse> second = null;
+		try {
+			Future<ServiceResponse> winner = null;
+			long p95 = hedge ? getP95() : -1;
+			long delay = Math.max(p95, MIN_HEDGE_DELAY);
+			// Without latencies (p95 unknown or 0) hedging only doubles the load
+			if (p95 > 0 && delay < timeout) {
+				winner = done.poll(delay, TimeUnit.MILLISECONDS);
+				if (winner == null) {
+					second = hedge(done, r);
+				}
+			}
+			if (winner == null) {
+				winner = done.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+			}
+			if (winner == null) {
+				timeouts.incrementAndGet();
+				return new ServiceResponse(CallStatus.responseTimedOut);
+			}
+			if (winner == second) {
+				hedgesWon.incrementAndGet();
+			}
+			ServiceResponse response = winner.get();
+			if (response != null && response.getCallStatus() == CallStatus.succeeded) {
+				record(System.currentTimeMillis() - start);
+			}
+			return response;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return new ServiceResponse(CallStatus.serviceSpecificFailure);
+		} catch (ExecutionException e) {
+			return new ServiceResponse(CallStatus.serviceSpecificFailure);
+		} finally {
+			first.cancel(true);
+			if (second != null) {
+				second.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Send the duplicate request of a hedged call, if there is a free thread.
+	 *
+	 * @param done
+	 *            Where the responses of the call arrive.
+	 * @param r
+	 *            The Service Request.
+	 * @return The duplicate call, or null if it could not be sent.
+	 */
+	private Future<ServiceResponse> hedge(ExecutorCompletionService<ServiceResponse> done, ServiceRequest r) {
+		try {
+			Future<ServiceResponse> second = done.submit(task(r));
+			hedges.incrementAndGet();
+			return second;
+		} catch (RejectedExecutionException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Get the number of calls that got no response by their deadline.
+	 *
+	 * @return Number of timeouts.
+	 */
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	/**
+	 * Get the number of duplicate requests sent by hedged calls.
+	 *
+	 * @return Number of hedges.
+	 */
+	public long getHedges() {
+		return hedges.get();
+	}
+
+	/**
+	 * Get the number of hedged calls answered first by the duplicate request.
+	 *
+	 * @return Number of hedges won.
+	 */
+	public long getHedgesWon() {
+		return hedgesWon.get();
+	}
+
+	/**
+	 * Get the number of calls that failed because all the threads were taken.
+	 *
+	 * @return Number of rejected calls.
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * Stop the threads. Calls in progress are abandoned.
+	 */
+	public void close() {
+		pool.shutdownNow();
+	}
+
+	/**
+	 * Create the task that performs a call.
+	 *
+	 * @param r
+	 *            The Service Request.
+	 * @return The task.
+	 */
+	private Callable<ServiceResponse> task(final ServiceRequest r) {
+		return new Callable<ServiceResponse>() {
+			public ServiceResponse call() throws Exception {
+				return caller.call(r);
+			}
+		};
+	}
+
+	/**
+	 * Record the latency of a successful call.
+	 *
+	 * @param millis
+	 *            The latency in milliseconds.
+	 */
+	private synchronized void record(long millis) {
+		latencies[(int) (recorded % SAMPLES)] = millis;
+		recorded++;
+	}
+
+	/**
+	 * Get the 95th percentile of the latency of recent successful calls.
+	 *
+	 * @return The latency in milliseconds, or -1 if there are not enough
+	 *         samples yet.
+	 */
+	private long getP95() {
+		long[] sorted;
+		synchronized (this) {
+			if (recorded < MIN_SAMPLES) {
+				return -1;
+			}
+			sorted = new long[(int) Math.min(recorded, SAMPLES)];
+			System.arraycopy(latencies, 0, sorted, 0, sorted.length);
+		}
+		Arrays.sort(sorted);
+		return sorted[(int) Math.ceil(sorted.length * 0.95) - 1];
+	}
+
+}
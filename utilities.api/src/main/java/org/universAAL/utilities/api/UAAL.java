@@ -23,6 +23,18 @@ package org.universAAL.utilities.api;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.universAAL.middleware.container.ModuleContext;
 import org.universAAL.middleware.context.ContextEvent;
@@ -30,10 +42,13 @@ import org.universAAL.middleware.context.ContextEventPattern;
 import org.universAAL.middleware.context.ContextPublisher;
 import org.universAAL.middleware.context.owl.ContextProvider;
 import org.universAAL.middleware.context.owl.ContextProviderType;
+import org.universAAL.middleware.rdf.Resource;
+import org.universAAL.middleware.service.CallStatus;
 import org.universAAL.middleware.service.DefaultServiceCaller;
 import org.universAAL.middleware.service.ServiceCaller;
 import org.universAAL.middleware.service.ServiceRequest;
 import org.universAAL.middleware.service.ServiceResponse;
+import org.universAAL.middleware.service.owl.Service;
 import org.universAAL.middleware.service.owls.profile.ServiceProfile;
 import org.universAAL.middleware.ui.UIRequest;
 import org.universAAL.utilities.api.context.mid.UtilPublisher;
@@ -90,6 +105,17 @@ import org.universAAL.utilities.api.context.mid.UtilPublisher;
  */
 public class UAAL {
 
+	/**
+	 * Default maximum number of threads used to issue asynchronous Service
+	 * calls.
+	 */
+	public static final int DEFAULT_ASYNC_THREADS = 8;
+	/**
+	 * Default maximum number of asynchronous Service calls waiting for a free
+	 * thread.
+	 */
+	public static final int DEFAULT_ASYNC_QUEUE = 256;
+
 	/**
 	 * The single Context Publisher universAAL wrapper class used by this class to
 	 * publish all Context Events.
@@ -102,11 +128,59 @@ public class UAAL {
 	 * pattern and the handling to perform associated to it.
 	 */
 	private ArrayList<WrapperC> subscribers;
+	/**
+	 * The single Context Subscriber universAAL wrapper class used by this class
+	 * to receive all subscribed Context Events when subscriptions are
+	 * multiplexed.
+	 */
+	private WrapperCMux multiplexer;
+	/**
+	 * Whether subscriptions are multiplexed in a single Context Subscriber.
+	 */
+	private boolean multiplexSubscriptions = false;
+	/**
+	 * A list of all the asynchronous dispatch queues placed in front of
+	 * subscribed listeners.
+	 */
+	private ArrayList<DispatchQueue> queues;
 	/**
 	 * The single Service Caller universAAL wrapper class used by this class to call
 	 * all Service Requests.
 	 */
 	private ServiceCaller caller;
+	/**
+	 * The bounded pool of threads used to issue asynchronous Service calls.
+	 */
+	private ThreadPoolExecutor executor;
+	/**
+	 * Maximum number of threads of the asynchronous calls pool.
+	 */
+	private int asyncThreads = DEFAULT_ASYNC_THREADS;
+	/**
+	 * Maximum number of pending calls in the asynchronous calls pool.
+	 */
+	private int asyncQueue = DEFAULT_ASYNC_QUEUE;
+	/**
+	 * Performer of Service calls with a deadline.
+	 */
+	private TimedCaller timedCaller;
+	/**
+	 * Default deadline in milliseconds of the calls of <code>callS()</code>,
+	 * or 0 if none.
+	 */
+	private volatile long defaultTimeout = 0;
+	/**
+	 * Breaker of the calls to failing services. Null if disabled.
+	 */
+	private volatile CircuitBreaker breaker;
+	/**
+	 * Cache of responses to read-only Service Requests. Null if disabled.
+	 */
+	private volatile ResponseCache responses;
+	/**
+	 * Issuer of concurrent Service Requests for <code>callSGather()</code>.
+	 */
+	private ScatterGather gatherer;
 	/**
 	 * A list of all Service Callee universAAL wrapper classes used by this class to
 	 * handle calls to provided Service Profiles. The reason for having a list
@@ -114,11 +188,29 @@ public class UAAL {
 	 * profile and the handling to perform associated to it.
 	 */
 	private ArrayList<WrapperS> callees;
+	/**
+	 * The single Service Callee universAAL wrapper class used by this class to
+	 * handle calls to all provided Service Profiles when callees are
+	 * multiplexed.
+	 */
+	private WrapperSMux calleeMultiplexer;
+	/**
+	 * Whether provided profiles are multiplexed in a single Service Callee.
+	 */
+	private boolean multiplexCallees = false;
 	/**
 	 * The single UI Caller universAAL wrapper class used by this class to send all UI
 	 * Requests.
 	 */
 	private WrapperUI requester;
+	/**
+	 * Maximum number of dialogs waiting for a response.
+	 */
+	private int uiMaxPending = WrapperUI.DEFAULT_MAX_PENDING;
+	/**
+	 * Time in milliseconds a dialog can wait for a response.
+	 */
+	private long uiExpiry = WrapperUI.DEFAULT_EXPIRY;
 	/**
 	 * The universAAL Module Context.
 	 */
@@ -187,15 +279,15 @@ public class UAAL {
 					publisher.publish(e);
 					return;
 				}
-				publisher = new UtilPublisher(context, cp.getURI(), (callees != null && !callees.isEmpty())
-						? ContextProviderType.controller : ContextProviderType.gauge, (String) null, null, null);
+				publisher = new UtilPublisher(context, cp.getURI(),
+						providesServices() ? ContextProviderType.controller : ContextProviderType.gauge, (String) null,
+						null, null);
 				publisher.publish(e);
 				return;
 			}
 			publisher = new UtilPublisher(context,
 					"http://ontology.universAAL.org/SimpleUAAL.owl#ContextEventsProvider",
-					(callees != null && !callees.isEmpty()) ? ContextProviderType.controller
-							: ContextProviderType.gauge,
+					providesServices() ? ContextProviderType.controller : ContextProviderType.gauge,
 					(String) null, null, null);
 
 		}
@@ -208,7 +300,9 @@ public class UAAL {
 	 * universAAL helper automatically creates its own internal Default Service Caller
 	 * if this is the first time the method is called. The call to the service
 	 * is synchronous: this method returns the response of the call straight
-	 * from Service Bus. You will have to deal with it.
+	 * from Service Bus. You will have to deal with it. If a default deadline
+	 * was set with <code>setDefaultTimeout()</code>, the call is performed
+	 * like in <code>callSTimed()</code>.
 	 * <p>
 	 * Remember that the simplified API in this library (
 	 * <code>org.universAAL.utilities.api.service</code> packages) can assist
@@ -221,10 +315,490 @@ public class UAAL {
 	 * @see org.universAAL.utilities.api.service.low.Request
 	 */
 	public ServiceResponse callS(ServiceRequest r) {
+		return perform(r, serviceKey(r), defaultTimeout, false);
+	}
+
+	/**
+	 * Calls a Service with a Service Request like <code>callS()</code>, but
+	 * grouping it with a given key in the circuit breaker instead of with the
+	 * requested class of service.
+	 *
+	 * @param r
+	 *            The Service Request describing the Service to call.
+	 * @param key
+	 *            The key of the call in the circuit breaker.
+	 * @return The Service Response to the call returned by the Service Bus, or
+	 *         a failure if the circuit of the key is open.
+	 * @see #setCircuitBreaker(CircuitBreaker)
+	 */
+	public ServiceResponse callS(ServiceRequest r, String key) {
+		return perform(r, key, defaultTimeout, false);
+	}
+
+	/**
+	 * Calls a Service with a Service Request, waiting for its response only
+	 * until a deadline.
+	 * <p>
+	 * The call is performed like in <code>callS()</code>, but from an internal
+	 * thread while the calling thread waits. If the Service Bus does not
+	 * answer in time, the call is abandoned and the returned Service Response
+	 * has <code>responseTimedOut</code> call status. At most as many calls as
+	 * the asynchronous thread limit (see <code>setAsyncLimits()</code>) can be
+	 * in progress at once, including abandoned calls that have not returned
+	 * yet: beyond that, calls fail with <code>serviceSpecificFailure</code>.
+	 *
+	 * @param r
+	 *            The Service Request describing the Service to call.
+	 * @param timeout
+	 *            Maximum time in milliseconds to wait for the response.
+	 * @return The Service Response to the call returned by the Service Bus, or
+	 *         one with <code>responseTimedOut</code> call status.
+	 * @see #setDefaultTimeout(long)
+	 */
+	public ServiceResponse callSTimed(ServiceRequest r, long timeout) {
+		return perform(r, serviceKey(r), timeout, false);
+	}
+
+	/**
+	 * Calls a Service with a read-only Service Request, sending a duplicate
+	 * request if it takes longer than usual, and waiting for the first
+	 * response only until a deadline.
+	 * <p>
+	 * This works like <code>callSTimed()</code>, but if there is no response
+	 * by the 95th percentile of the latency of recent calls, an identical
+	 * request is sent and the first response to arrive is returned. Requests
+	 * with effects are never duplicated, since they could be performed twice.
+	 *
+	 * @param r
+	 *            The Service Request describing the Service to call.
+	 * @param timeout
+	 *            Maximum time in milliseconds to wait for the response.
+	 * @return The first Service Response to the call returned by the Service
+	 *         Bus, or one with <code>responseTimedOut</code> call status.
+	 */
+	public ServiceResponse callSHedged(ServiceRequest r, long timeout) {
+		Resource[] effects = r.getRequiredEffects();
+		boolean readOnly = effects == null || effects.length == 0;
+		return perform(r, serviceKey(r), timeout, readOnly);
+	}
+
+	/**
+	 * Sets the deadline of the calls of <code>callS()</code> and those based
+	 * on it. There is none by default: they wait for the Service Bus as long
+	 * as it takes.
+	 *
+	 * @param timeout
+	 *            Maximum time in milliseconds to wait for a response, or 0 to
+	 *            wait without limit.
+	 */
+	public void setDefaultTimeout(long timeout) {
+		this.defaultTimeout = timeout;
+	}
+
+	/**
+	 * Gets the number of calls with a deadline that got no response in time,
+	 * since the helper was created or terminated.
+	 *
+	 * @return Number of timed out calls.
+	 */
+	public synchronized long getTimeouts() {
+		return timedCaller == null ? 0 : timedCaller.getTimeouts();
+	}
+
+	/**
+	 * Gets the number of hedged calls answered first by the duplicate request,
+	 * since the helper was created or terminated.
+	 *
+	 * @return Number of hedges won.
+	 */
+	public synchronized long getHedgesWon() {
+		return timedCaller == null ? 0 : timedCaller.getHedgesWon();
+	}
+
+	/**
+	 * Sets the circuit breaker of the calls of <code>callS()</code> and those
+	 * based on it. Calls are grouped in the breaker by the URI of the
+	 * requested class of service, or by the key given to
+	 * <code>callS(ServiceRequest, String)</code>. While the circuit of a group
+	 * is open, its calls are not sent to the Service Bus and get a Service
+	 * Response with <code>serviceSpecificFailure</code> call status straight
+	 * away. There is none by default.
+	 *
+	 * @param b
+	 *            The circuit breaker, or null to disable it.
+	 */
+	public void setCircuitBreaker(CircuitBreaker b) {
+		this.breaker = b;
+	}
+
+	/**
+	 * Perform a call through the circuit breaker, if any, and with a
+	 * deadline, if any.
+	 *
+	 * @param r
+	 *            The Service Request.
+	 * @param key
+	 *            The key of the call in the circuit breaker, or null.
+	 * @param timeout
+	 *            Maximum time in milliseconds to wait for the response, or 0
+	 *            to wait without limit.
+	 * @param hedge
+	 *            Whether to send a duplicate request if it takes longer than
+	 *            usual.
+	 * @return The Service Response to the call.
+	 */
+	private ServiceResponse perform(ServiceRequest r, String key, long timeout, boolean hedge) {
+		CircuitBreaker b = key == null ? null : breaker;
+		long ticket = b == null ? CircuitBreaker.REJECTED : b.allow(key);
+		if (b != null && ticket == CircuitBreaker.REJECTED) {
+			return CircuitBreaker.rejected(key);
+		}
+		ServiceResponse response = null;
+		try {
+			response = timeout > 0 ? getTimedCaller().call(r, timeout, hedge) : getCaller().call(r);
+		} finally {
+			if (b != null) {
+				// Interrupted calls were cancelled: they say nothing of the service
+				if (Thread.currentThread().isInterrupted()) {
+					b.cancel(key, ticket);
+				} else {
+					b.record(key, ticket, response);
+				}
+			}
+		}
+		return called(r, response);
+	}
+
+	/**
+	 * Get the default key of a call in the circuit breaker.
+	 *
+	 * @param r
+	 *            The Service Request.
+	 * @return The URI of the requested class of service, or null if unknown.
+	 */
+	private static String serviceKey(ServiceRequest r) {
+		Service s = r.getRequestedService();
+		return s == null ? null : s.getClassURI();
+	}
+
+	/**
+	 * Handle the response of a call before returning it: successful calls
+	 * with effects remove the cached responses they may have made stale.
+	 *
+	 * @param r
+	 *            The Service Request.
+	 * @param response
+	 *            The Service Response to the call.
+	 * @return The same response.
+	 */
+	private ServiceResponse called(ServiceRequest r, ServiceResponse response) {
+		ResponseCache cache = responses;
+		if (cache != null && response != null && response.getCallStatus() == CallStatus.succeeded) {
+			cache.invalidate(r);
+		}
+		return response;
+	}
+
+	/**
+	 * Calls a Service with a read-only Service Request, reusing a recent
+	 * response to an identical request if there is one.
+	 * <p>
+	 * If a response cache has been set with <code>setResponseCache()</code>,
+	 * the response is taken from it if it was obtained less than the given
+	 * time ago. Otherwise the call is performed like in <code>callS()</code>
+	 * and, if successful and the request has no effects, its response is
+	 * cached for that time. Without a cache this is just
+	 * <code>callS()</code>. Cached responses are shared, so they must not be
+	 * modified. Successful calls with effects through <code>callS()</code>
+	 * remove the cached responses for the same class of service.
+	 *
+	 * @param r
+	 *            The Service Request describing the Service to call.
+	 * @param ttl
+	 *            Time in milliseconds during which the response can be reused.
+	 * @return The Service Response to the call, from the Service Bus or the
+	 *         cache.
+	 * @see #setResponseCache(ResponseCache)
+	 */
+	public ServiceResponse callSCached(ServiceRequest r, long ttl) {
+		ResponseCache cache = responses;
+		if (cache == null || ttl <= 0) {
+			return callS(r);
+		}
+		return callCached(cache, ResponseCache.key(r), r, ttl);
+	}
+
+	/**
+	 * Get the response to a request from the cache, or else call the service
+	 * and cache its response.
+	 *
+	 * @param cache
+	 *            The response cache.
+	 * @param key
+	 *            The canonical form of the request.
+	 * @param r
+	 *            The Service Request describing the Service to call.
+	 * @param ttl
+	 *            Time in milliseconds during which the response can be reused.
+	 * @return The Service Response to the call, from the Service Bus or the
+	 *         cache.
+	 */
+	private ServiceResponse callCached(ResponseCache cache, String key, ServiceRequest r, long ttl) {
+		ServiceResponse response = cache.get(key);
+		if (response == null) {
+			response = callS(r);
+			cache.put(key, r, response, ttl);
+		}
+		return response;
+	}
+
+	/**
+	 * Calls a Service with a read-only Service Request, reusing a recent
+	 * response to an identical request if there is one and no event matching
+	 * the given patterns was received since then.
+	 * <p>
+	 * This works like <code>callSCached(ServiceRequest, long)</code>, but the
+	 * cached response is also bound to the patterns, and the response cache is
+	 * subscribed to each distinct set of patterns the first time, so that a
+	 * matching event removes it immediately. This allows long times to live for
+	 * state that can change at any time, like that of an actuator.
+	 *
+	 * @param r
+	 *            The Service Request describing the Service to call.
+	 * @param ttl
+	 *            Time in milliseconds during which the response can be reused.
+	 * @param invalidators
+	 *            Patterns of the events that make the response stale.
+	 * @return The Service Response to the call, from the Service Bus or the
+	 *         cache.
+	 * @see #setResponseCache(ResponseCache)
+	 */
+	public ServiceResponse callSCached(ServiceRequest r, long ttl, ContextEventPattern[] invalidators) {
+		ResponseCache cache = responses;
+		if (cache == null || ttl <= 0) {
+			return callS(r);
+		}
+		String key = ResponseCache.key(r);
+		ServiceResponse response = cache.get(key);
+		if (response == null) {
+			response = callS(r);
+			if (cache.put(key, r, response, ttl) && cache.bind(key, invalidators)) {
+				subscribeC(invalidators, cache);
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * Sets the cache used by <code>callSCached()</code>. There is none by
+	 * default. The responses of the cache bound to event patterns are removed,
+	 * since the subscriptions that invalidated them belong to another helper.
+	 *
+	 * @param cache
+	 *            The cache of responses, or null to disable it.
+	 */
+	public void setResponseCache(ResponseCache cache) {
+		if (cache != null && cache != responses) {
+			// Its subscriptions, if any, were made through another helper
+			cache.clearSubscriptions();
+		}
+		this.responses = cache;
+	}
+
+	/**
+	 * Calls a Service with a Service Request without blocking the calling
+	 * thread.
+	 * <p>
+	 * The call is performed exactly like in <code>callS()</code>, but from a
+	 * thread of a bounded pool owned by this universAAL helper, which is
+	 * automatically created the first time it is needed. The returned Future
+	 * gives access to the Service Response once the Service Bus answers. If
+	 * all the threads of the pool are busy and its queue is full, the call is
+	 * performed in the calling thread instead, which throttles the caller
+	 * until there is room again. If the pool is being shut down by
+	 * <code>terminate()</code>, the call is not performed and the Future holds
+	 * a Service Response with <code>serviceSpecificFailure</code> call status.
+	 * Calls still waiting in the queue when <code>terminate()</code> is called
+	 * are not performed either, and their Futures are cancelled.
+	 *
+	 * @param r
+	 *            The Service Request describing the Service to call.
+	 * @return A Future that will hold the Service Response to the call.
+	 * @see #setAsyncLimits(int, int)
+	 */
+	public Future<ServiceResponse> callSAsync(final ServiceRequest r) {
+		try {
+			return getExecutor().submit(new Callable<ServiceResponse>() {
+				public ServiceResponse call() throws Exception {
+					return callS(r);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			FutureTask<ServiceResponse> failed = new FutureTask<ServiceResponse>(new Callable<ServiceResponse>() {
+				public ServiceResponse call() throws Exception {
+					return new ServiceResponse(CallStatus.serviceSpecificFailure);
+				}
+			});
+			failed.run();
+			return failed;
+		}
+	}
+
+	/**
+	 * Calls several Services at once, issuing all the Service Requests
+	 * concurrently, and waits until all of them have been answered.
+	 * <p>
+	 * The calls are performed like in <code>callSAsync()</code>, so they share
+	 * its bounded pool of threads. If a call could not be completed (e.g. the
+	 * thread was interrupted, or the pool was shut down by
+	 * <code>terminate()</code>) its Service Response will have a
+	 * <code>serviceSpecificFailure</code> call status.
+	 *
+	 * @param r
+	 *            The Service Requests describing the Services to call.
+	 * @return The Service Responses to the calls, in the same order as the
+	 *         requests.
+	 */
+	public ServiceResponse[] callSAll(ServiceRequest[] r) {
+		ArrayList<Future<ServiceResponse>> futures = new ArrayList<Future<ServiceResponse>>(r.length);
+		for (int i = 0; i < r.length; i++) {
+			futures.add(callSAsync(r[i]));
+		}
+		ServiceResponse[] responses = new ServiceResponse[r.length];
+		for (int i = 0; i < r.length; i++) {
+			try {
+				responses[i] = futures.get(i).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				responses[i] = new ServiceResponse(CallStatus.serviceSpecificFailure);
+			} catch (ExecutionException e) {
+				responses[i] = new ServiceResponse(CallStatus.serviceSpecificFailure);
+			} catch (CancellationException e) {
+				responses[i] = new ServiceResponse(CallStatus.serviceSpecificFailure);
+			}
+		}
+		return responses;
+	}
+
+	/**
+	 * Calls several Services at once, issuing the Service Requests
+	 * concurrently, and waits for their responses until a deadline.
+	 * <p>
+	 * Unlike <code>callSAll()</code>, this does not wait for the slowest
+	 * service: the requests that were not answered in time get a Service
+	 * Response with <code>responseTimedOut</code> call status, and calls still
+	 * in progress are interrupted. Each call is performed like in
+	 * <code>callS()</code>, so the circuit breaker and default deadline apply,
+	 * but interrupted calls are not counted as failures by the breaker.
+	 * At most as many calls as the asynchronous thread limit (see
+	 * <code>setAsyncLimits()</code>) are in progress at once, and as many as
+	 * its queue limit wait for their turn: the rest fail straight away with
+	 * <code>serviceSpecificFailure</code>. The responses can be handled as
+	 * they arrive with a listener.
+	 *
+	 * @param r
+	 *            The Service Requests describing the Services to call.
+	 * @param timeout
+	 *            Maximum time in milliseconds to wait for all the responses.
+	 * @param l
+	 *            Receiver of each response as it arrives, or null.
+	 * @return The Service Responses to the calls, in the same order as the
+	 *         requests.
+	 */
+	public ServiceResponse[] callSGather(ServiceRequest[] r, long timeout, ScatterGather.Listener l) {
+		return getGatherer().gather(r, timeout, l);
+	}
+
+	/**
+	 * Sets the limits of the pool of threads used by <code>callSAsync()</code>
+	 * and <code>callSAll()</code>, of the concurrent calls of
+	 * <code>callSGather()</code>, and of the calls with a deadline in progress
+	 * at once (see <code>callSTimed()</code>). It only has effect before the
+	 * pools are created by the first calls that need them, or after
+	 * <code>terminate()</code>.
+	 *
+	 * @param threads
+	 *            Maximum number of concurrent asynchronous calls.
+	 * @param queue
+	 *            Maximum number of asynchronous calls waiting for a free
+	 *            thread.
+	 */
+	public void setAsyncLimits(int threads, int queue) {
+		this.asyncThreads = threads;
+		this.asyncQueue = queue;
+	}
+
+	/**
+	 * Get the Service Caller, creating it if this is the first time it is
+	 * needed. Asynchronous calls may reach this concurrently.
+	 *
+	 * @return The Service Caller.
+	 */
+	private synchronized ServiceCaller getCaller() {
 		if (caller == null) {
 			caller = new DefaultServiceCaller(context);
 		}
-		return caller.call(r);
+		return caller;
+	}
+
+	/**
+	 * Get the performer of calls with a deadline, creating it if this is the
+	 * first time it is needed.
+	 *
+	 * @return The performer of calls with a deadline.
+	 */
+	private synchronized TimedCaller getTimedCaller() {
+		if (timedCaller == null) {
+			timedCaller = new TimedCaller(getCaller(), asyncThreads);
+		}
+		return timedCaller;
+	}
+
+	/**
+	 * Get the issuer of concurrent calls, creating it if this is the first
+	 * time it is needed.
+	 *
+	 * @return The issuer of concurrent calls.
+	 */
+	private synchronized ScatterGather getGatherer() {
+		if (gatherer == null) {
+			// Through callS, to apply the circuit breaker and default deadline
+			gatherer = new ScatterGather(getCaller(), asyncThreads, asyncQueue) {
+				@Override
+				protected ServiceResponse call(ServiceRequest request) {
+					return callS(request);
+				}
+			};
+		}
+		return gatherer;
+	}
+
+	/**
+	 * Get the pool of threads for asynchronous calls, creating it if this is
+	 * the first time it is needed.
+	 *
+	 * @return The pool of threads.
+	 */
+	private synchronized ThreadPoolExecutor getExecutor() {
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(asyncThreads, asyncThreads, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(asyncQueue), new ThreadFactory() {
+						public Thread newThread(Runnable run) {
+							Thread t = new Thread(run, "UAAL-async-caller");
+							t.setDaemon(true);
+							return t;
+						}
+					}, new RejectedExecutionHandler() {
+						public void rejectedExecution(Runnable run, ThreadPoolExecutor pool) {
+							// Throttle the caller, unless nobody will ever run it
+							if (pool.isShutdown()) {
+								throw new RejectedExecutionException("The asynchronous calls were terminated");
+							}
+							run.run();
+						}
+					});
+		}
+		return executor;
 	}
 
 	/**
@@ -237,12 +811,11 @@ public class UAAL {
 	 * UI Request that is being sent. The response contains the user input to
 	 * the forms described in the UI Request, so the listener must be ready to
 	 * work with the fields, controls, submits and identifiers used in the
-	 * request. There can only be a single listener associated to the UI Caller
-	 * at a time, which means this method cannot be called again with a new
-	 * listener until the previous response has been received and processed by
-	 * the old listener. Another solution is using always the same instance of
-	 * the listener, which should then be ready to handle any possible UI
-	 * response to your application.
+	 * request. Each UI Request keeps its own listener until its response is
+	 * received, so this method can be called again with other listeners while
+	 * previous dialogs are still waiting for a response. Dialogs that do not
+	 * get a response in time (see <code>setUILimits()</code>) are forgotten,
+	 * and any late response to them is discarded.
 	 * <p>
 	 * Remember that the simplified API in this library (
 	 * <code>org.universAAL.utilities.api.ui</code> packages) can assist you in
@@ -259,9 +832,30 @@ public class UAAL {
 	public void requestUI(UIRequest ui, IUIListener l) {
 		if (requester == null) {
 			requester = new WrapperUI(context);
+			requester.setLimits(uiMaxPending, uiExpiry);
+		}
+		requester.sendUIRequest(ui, l);
+	}
+
+	/**
+	 * Sets the limits of the dialogs that can be waiting for a response to a
+	 * UI Request sent with <code>requestUI()</code>.
+	 *
+	 * @param maxPending
+	 *            Maximum number of dialogs waiting for a response. When
+	 *            exceeded, the oldest one is forgotten. By default it is
+	 *            {@link WrapperUI#DEFAULT_MAX_PENDING}.
+	 * @param expiry
+	 *            Time in milliseconds after which a dialog waiting for a
+	 *            response is forgotten. By default it is
+	 *            {@link WrapperUI#DEFAULT_EXPIRY}.
+	 */
+	public void setUILimits(int maxPending, long expiry) {
+		this.uiMaxPending = maxPending;
+		this.uiExpiry = expiry;
+		if (requester != null) {
+			requester.setLimits(maxPending, expiry);
 		}
-		requester.setListener(l);
-		requester.sendUIRequest(ui);
 	}
 
 	/**
@@ -278,7 +872,9 @@ public class UAAL {
 	 * Since every call to this method creates a new subscriber, you should be
 	 * careful with how many times you call this method. Usually, a limited
 	 * number of subscriptions is needed. Remember that you can combine
-	 * different patterns to be handled by a single listener.
+	 * different patterns to be handled by a single listener, or use
+	 * <code>setMultiplexSubscriptions()</code> to share a single subscriber
+	 * among all listeners.
 	 * <p>
 	 * Remember that the simplified API in this library (
 	 * <code>org.universAAL.utilities.api.context</code> packages) can assist
@@ -293,10 +889,87 @@ public class UAAL {
 	 * @see org.universAAL.utilities.api.context.Pattern
 	 */
 	public void subscribeC(ContextEventPattern[] p, ICListener l) {
-		if (subscribers == null) {
-			subscribers = new ArrayList<WrapperC>(5);
+		if (multiplexSubscriptions) {
+			WrapperCMux mux;
+			synchronized (this) {
+				if (multiplexer == null) {
+					multiplexer = new WrapperCMux(context, p, l);
+					return;
+				}
+				mux = multiplexer;
+			}
+			mux.add(p, l);
+			return;
+		}
+		WrapperC wrapper = new WrapperC(context, p, l);
+		synchronized (this) {
+			if (subscribers == null) {
+				subscribers = new ArrayList<WrapperC>(5);
+			}
+			subscribers.add(wrapper);
+		}
+	}
+
+	/**
+	 * Subscribes for Context Events and specifies how the events would be
+	 * handled, without holding the thread that delivers the events.
+	 * <p>
+	 * This works like <code>subscribeC(p, l)</code>, but the received events
+	 * are first put in a bounded queue of their own, from which they are
+	 * passed to the listener by separate worker threads. This way a slow
+	 * listener does not delay the delivery of events to other listeners. The
+	 * returned queue gives figures about its usage, like its depth or the
+	 * number of events dropped because it was full. The queue is closed when
+	 * <code>terminate()</code> is called.
+	 *
+	 * @param p
+	 *            An array of Context Event Patterns describing the Context
+	 *            Events that will be handled by the listener.
+	 * @param l
+	 *            The listener that will handle the received event that matches
+	 *            the patterns.
+	 * @param overflow
+	 *            What to do with a received event when the queue is full.
+	 * @param capacity
+	 *            Maximum number of events waiting in the queue.
+	 * @param threads
+	 *            Number of threads passing events to the listener. With more
+	 *            than one, the listener must be thread-safe and events may be
+	 *            handled out of order.
+	 * @return The queue placed in front of the listener.
+	 * @see org.universAAL.utilities.api.DispatchQueue
+	 */
+	public DispatchQueue subscribeC(ContextEventPattern[] p, ICListener l, DispatchQueue.Overflow overflow,
+			int capacity, int threads) {
+		DispatchQueue q = new DispatchQueue(context, l, overflow, capacity, threads);
+		synchronized (this) {
+			if (queues == null) {
+				queues = new ArrayList<DispatchQueue>(5);
+			}
+			queues.add(q);
 		}
-		subscribers.add(new WrapperC(context, p, l));
+		subscribeC(p, q);
+		return q;
+	}
+
+	/**
+	 * Sets whether the subscriptions made through <code>subscribeC()</code>
+	 * are multiplexed in a single internal Context Subscriber.
+	 * <p>
+	 * When enabled, the patterns of all calls to <code>subscribeC()</code> are
+	 * registered in the same Context Subscriber, and each event received by it
+	 * is passed only to the listeners associated to patterns that match it.
+	 * This saves creating a new Context Subscriber per call, so it is
+	 * recommended when there are many listeners. It only has effect on later
+	 * calls to <code>subscribeC()</code>, so it should be set before the first
+	 * one.
+	 *
+	 * @param multiplex
+	 *            <code>true</code> to use a single Context Subscriber for all
+	 *            subscriptions. By default it is <code>false</code>.
+	 */
+	public void setMultiplexSubscriptions(boolean multiplex) {
+		this.multiplexSubscriptions = multiplex;
 	}
 
 	/**
@@ -312,7 +985,8 @@ public class UAAL {
 	 * to the profiles until <code>terminate()</code> is called. Since every
 	 * call to this method creates a new callee, you should be careful with how
 	 * many times you call this method. Usually, a limited number of callees is
-	 * needed.
+	 * needed, unless <code>setMultiplexCallees()</code> is used to share a
+	 * single callee among all listeners.
 	 * <p>
 	 * Remember that the simplified API in this library (
 	 * <code>org.universAAL.utilities.api.service</code> packages) can assist
@@ -327,12 +1001,91 @@ public class UAAL {
 	 * @see org.universAAL.utilities.api.service.low.Profile
 	 */
 	public void provideS(ServiceProfile[] p, ISListener l) {
+		if (multiplexCallees) {
+			WrapperSMux mux;
+			synchronized (this) {
+				if (calleeMultiplexer == null) {
+					calleeMultiplexer = new WrapperSMux(context, p, l);
+					return;
+				}
+				mux = calleeMultiplexer;
+			}
+			mux.add(p, l);
+			return;
+		}
 		if (callees == null) {
 			callees = new ArrayList<WrapperS>(5);
 		}
 		callees.add(new WrapperS(context, p, l));
 	}
 
+	/**
+	 * Provides Service Profiles like <code>provideS(ServiceProfile[],
+	 * ISListener)</code>, limiting the number of calls handled at once by the
+	 * listener. Calls beyond the limits of the bulkhead wait shortly for room
+	 * and are then rejected with <code>serviceSpecificFailure</code> call
+	 * status, without reaching the listener. If callees are multiplexed, the
+	 * profiles join the single Service Callee, which applies the bulkhead to
+	 * the calls to this listener only. The bulkhead can be kept to read its
+	 * counts of calls in flight and rejected.
+	 *
+	 * @param p
+	 *            An array of Service Profiles describing the provided services
+	 *            that will be handled by the listener.
+	 * @param l
+	 *            The listener that will handle the received call request that
+	 *            matches the provided service profiles.
+	 * @param b
+	 *            The limits of concurrent calls to the listener.
+	 */
+	public void provideS(ServiceProfile[] p, ISListener l, Bulkhead b) {
+		if (multiplexCallees) {
+			WrapperSMux mux;
+			synchronized (this) {
+				if (calleeMultiplexer == null) {
+					calleeMultiplexer = new WrapperSMux(context, p, l, b);
+					return;
+				}
+				mux = calleeMultiplexer;
+			}
+			mux.add(p, l, b);
+			return;
+		}
+		if (callees == null) {
+			callees = new ArrayList<WrapperS>(5);
+		}
+		callees.add(new WrapperS(context, p, l, b));
+	}
+
+	/**
+	 * Sets whether the profiles provided through <code>provideS()</code> are
+	 * multiplexed in a single internal Service Callee.
+	 * <p>
+	 * When enabled, the profiles of all calls to <code>provideS()</code> are
+	 * registered in the same Service Callee, and each call received by it is
+	 * passed to the listener associated to the called profile, found by the
+	 * process URI of the call. This saves creating a new Service Callee per
+	 * call, so it is recommended when many profiles are provided. It only has
+	 * effect on later calls to <code>provideS()</code>, so it should be set
+	 * before the first one.
+	 *
+	 * @param multiplex
+	 *            <code>true</code> to use a single Service Callee for all
+	 *            provided profiles. By default it is <code>false</code>.
+	 */
+	public void setMultiplexCallees(boolean multiplex) {
+		this.multiplexCallees = multiplex;
+	}
+
+	/**
+	 * Tells whether Service Profiles have been provided through this helper.
+	 *
+	 * @return <code>true</code> if <code>provideS()</code> was called.
+	 */
+	private boolean providesServices() {
+		return (callees != null && !callees.isEmpty()) || calleeMultiplexer != null;
+	}
+
 	/**
 	 * Closes all universAAL wrapper classes created by this universAAL helper until now (by
 	 * calling their <code>.close()</code> method) and eliminates them. The
@@ -345,22 +1098,63 @@ public class UAAL {
 			publisher.close();
 			publisher = null;
 		}
-		if (caller != null) {
-			caller.close();
-			caller = null;
+		synchronized (this) {
+			if (executor != null) {
+				// Release whoever waits for the calls that will never run
+				List<Runnable> pending = executor.shutdownNow();
+				for (int i = 0; i < pending.size(); i++) {
+					((Future<?>) pending.get(i)).cancel(false);
+				}
+				executor = null;
+			}
+			if (gatherer != null) {
+				gatherer.close();
+				gatherer = null;
+			}
+			if (timedCaller != null) {
+				timedCaller.close();
+				timedCaller = null;
+			}
+			if (caller != null) {
+				caller.close();
+				caller = null;
+			}
 		}
 		if (requester != null) {
 			requester.close();
 			requester = null;
 		}
 
-		if (subscribers != null) {
-			Iterator<WrapperC> iter = subscribers.iterator();
+		ArrayList<WrapperC> closing;
+		synchronized (this) {
+			closing = subscribers;
+			subscribers = null;
+		}
+		if (closing != null) {
+			Iterator<WrapperC> iter = closing.iterator();
 			while (iter.hasNext()) {
 				((WrapperC) iter.next()).close();
 			}
-			subscribers.clear();
-			subscribers = null;
+			closing.clear();
+		}
+
+		synchronized (this) {
+			if (multiplexer != null) {
+				multiplexer.close();
+				multiplexer = null;
+			}
+			if (queues != null) {
+				Iterator<DispatchQueue> iter = queues.iterator();
+				while (iter.hasNext()) {
+					iter.next().close();
+				}
+				queues = null;
+			}
+		}
+		ResponseCache cache = responses;
+		if (cache != null) {
+			// Nothing would invalidate its bound responses any more
+			cache.clearSubscriptions();
 		}
 
 		if (callees != null) {
@@ -371,6 +1165,13 @@ public class UAAL {
 			callees.clear();
 			callees = null;
 		}
+
+		synchronized (this) {
+			if (calleeMultiplexer != null) {
+				calleeMultiplexer.close();
+				calleeMultiplexer = null;
+			}
+		}
 	}
 
 }
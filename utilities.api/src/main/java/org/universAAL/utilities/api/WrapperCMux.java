@@ -0,0 +1,105 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api;
+
+import java.util.List;
+
+import org.universAAL.middleware.container.ModuleContext;
+import org.universAAL.middleware.context.ContextEvent;
+import org.universAAL.middleware.context.ContextEventPattern;
+import org.universAAL.middleware.context.ContextSubscriber;
+import org.universAAL.utilities.api.context.PatternIndex;
+
+/**
+ * This class is for internal use by the utility API only. It is a single
+ * Context Subscriber that registers the patterns of many ICListeners at once
+ * and dispatches each received event only to the listeners with a matching
+ * pattern. Candidate listeners are found through a {@link PatternIndex}, so
+ * that only those are checked against the event.
+ *
+ * @author alfiva
+ *
+ */
+public class WrapperCMux extends ContextSubscriber {
+
+	/**
+	 * The index of the patterns of the associated listeners.
+	 */
+	private final PatternIndex<ICListener> index = new PatternIndex<ICListener>();
+
+	/**
+	 * Constructor that takes the first listener to associate.
+	 *
+	 * @param context
+	 *            The universAAL Module Context.
+	 * @param initialSubscriptions
+	 *            Event Patterns to subscriber to.
+	 * @param l
+	 *            The associated ICListener.
+	 */
+	protected WrapperCMux(ModuleContext context, ContextEventPattern[] initialSubscriptions, ICListener l) {
+		// Registered without patterns, so no event arrives before the index
+		super(context, new ContextEventPattern[0]);
+		add(initialSubscriptions, l);
+	}
+
+	/**
+	 * Associate another listener to some patterns. The patterns are added to
+	 * the registration of this single subscriber.
+	 *
+	 * @param subscriptions
+	 *            Event Patterns to subscriber to.
+	 * @param l
+	 *            The associated ICListener.
+	 */
+	protected void add(ContextEventPattern[] subscriptions, ICListener l) {
+		index.add(subscriptions, l);
+		addNewRegParams(subscriptions);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.universAAL.middleware.context.ContextSubscriber#
+	 * communicationChannelBroken()
+	 */
+	@Override
+	public void communicationChannelBroken() {
+		// TODO Auto-generated method stub
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.universAAL.middleware.context.ContextSubscriber#handleContextEvent
+	 * (org.universAAL.middleware.context.ContextEvent)
+	 */
+	@Override
+	public void handleContextEvent(ContextEvent event) {
+		List<ICListener> targets = index.match(event);
+		for (int i = 0; i < targets.size(); i++) {
+			targets.get(i).handleContextEvent(event);
+		}
+	}
+
+}
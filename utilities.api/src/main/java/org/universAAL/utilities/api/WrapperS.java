@@ -42,6 +42,11 @@ public class WrapperS extends ServiceCallee {
 	 */
 	private ISListener listener;
 
+	/**
+	 * The limit of concurrent calls, or null if unlimited.
+	 */
+	private Bulkhead bulkhead;
+
 	/**
 	 * Constructor that takes the listener to associate.
 	 *
@@ -53,8 +58,26 @@ public class WrapperS extends ServiceCallee {
 	 *            The associated ISListener.
 	 */
 	protected WrapperS(ModuleContext context, ServiceProfile[] realizedServices, ISListener l) {
+		this(context, realizedServices, l, null);
+	}
+
+	/**
+	 * Constructor that takes the listener to associate and the limit of
+	 * concurrent calls to it.
+	 *
+	 * @param context
+	 *            The universAAL Module Context.
+	 * @param realizedServices
+	 *            Service Profiles describing the services to provide.
+	 * @param l
+	 *            The associated ISListener.
+	 * @param b
+	 *            The limit of concurrent calls, or null if unlimited.
+	 */
+	protected WrapperS(ModuleContext context, ServiceProfile[] realizedServices, ISListener l, Bulkhead b) {
 		super(context, realizedServices);
 		listener = l;
+		bulkhead = b;
 	}
 
 	/*
@@ -78,7 +101,18 @@ public class WrapperS extends ServiceCallee {
 	 */
 	@Override
 	public ServiceResponse handleCall(ServiceCall s) {
-		return listener.handleCall(s);
+		if (bulkhead == null || s == null) {
+			return listener.handleCall(s);
+		}
+		String process = s.getProcessURI();
+		if (!bulkhead.enter(process)) {
+			return Bulkhead.rejected();
+		}
+		try {
+			return listener.handleCall(s);
+		} finally {
+			bulkhead.exit(process);
+		}
 	}
 
 }
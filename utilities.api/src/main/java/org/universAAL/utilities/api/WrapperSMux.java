@@ -0,0 +1,204 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api;
+
+import java.util.HashMap;
+
+import org.universAAL.middleware.container.ModuleContext;
+import org.universAAL.middleware.service.CallStatus;
+import org.universAAL.middleware.service.ServiceCall;
+import org.universAAL.middleware.service.ServiceCallee;
+import org.universAAL.middleware.service.ServiceResponse;
+import org.universAAL.middleware.service.owls.profile.ServiceProfile;
+
+/**
+ * This class is for internal use by the utility API only. It is a single
+ * Service Callee that holds the profiles of many ISListeners at once and
+ * passes each call to the listener that owns the called profile, looking it
+ * up by the process URI of the call.
+ *
+ * @author alfiva
+ *
+ */
+public class WrapperSMux extends ServiceCallee {
+
+	/**
+	 * The associated ISListeners, with their limits of concurrent calls, by the
+	 * process URI of their profiles. It is replaced as a whole every time
+	 * listeners are added, so that calls can be dispatched without locking.
+	 */
+	private volatile HashMap<String, Binding> listeners = new HashMap<String, Binding>();
+
+	/**
+	 * Constructor that takes the first listener to associate.
+	 *
+	 * @param context
+	 *            The universAAL Module Context.
+	 * @param realizedServices
+	 *            Service Profiles describing the services to provide.
+	 * @param l
+	 *            The associated ISListener.
+	 */
+	protected WrapperSMux(ModuleContext context, ServiceProfile[] realizedServices, ISListener l) {
+		this(context, realizedServices, l, null);
+	}
+
+	/**
+	 * Constructor that takes the first listener to associate and the limit of
+	 * concurrent calls to it.
+	 *
+	 * @param context
+	 *            The universAAL Module Context.
+	 * @param realizedServices
+	 *            Service Profiles describing the services to provide.
+	 * @param l
+	 *            The associated ISListener.
+	 * @param b
+	 *            The limit of concurrent calls to the listener, or null if
+	 *            unlimited.
+	 */
+	protected WrapperSMux(ModuleContext context, ServiceProfile[] realizedServices, ISListener l, Bulkhead b) {
+		// Registered without profiles, so no call arrives before the table
+		super(context, new ServiceProfile[0]);
+		add(realizedServices, l, b);
+	}
+
+	/**
+	 * Associate another listener to some profiles. The profiles are added to
+	 * the ones provided by this single callee.
+	 *
+	 * @param realizedServices
+	 *            Service Profiles describing the services to provide.
+	 * @param l
+	 *            The associated ISListener.
+	 */
+	protected void add(ServiceProfile[] realizedServices, ISListener l) {
+		add(realizedServices, l, null);
+	}
+
+	/**
+	 * Associate another listener to some profiles, limiting the concurrent
+	 * calls to it. The profiles are added to the ones provided by this single
+	 * callee.
+	 *
+	 * @param realizedServices
+	 *            Service Profiles describing the services to provide.
+	 * @param l
+	 *            The associated ISListener.
+	 * @param b
+	 *            The limit of concurrent calls to the listener, or null if
+	 *            unlimited.
+	 */
+	protected void add(ServiceProfile[] realizedServices, ISListener l, Bulkhead b) {
+		synchronized (this) {
+			listeners = with(realizedServices, new Binding(l, b));
+		}
+		addNewServiceProfiles(realizedServices);
+	}
+
+	/**
+	 * Create a new table with the associations of the current one and some
+	 * more.
+	 *
+	 * @param realizedServices
+	 *            The new profiles.
+	 * @param l
+	 *            The listener of the new profiles, with its limits.
+	 * @return The new table.
+	 */
+	private HashMap<String, Binding> with(ServiceProfile[] realizedServices, Binding l) {
+		HashMap<String, Binding> table = new HashMap<String, Binding>(listeners);
+		for (int i = 0; i < realizedServices.length; i++) {
+			table.put(realizedServices[i].getProcessURI(), l);
+		}
+		return table;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.universAAL.middleware.service.ServiceCallee#
+	 * communicationChannelBroken ()
+	 */
+	@Override
+	public void communicationChannelBroken() {
+		// TODO Auto-generated method stub
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.universAAL.middleware.service.ServiceCallee#handleCall(org.universAAL
+	 * .middleware.service.ServiceCall)
+	 */
+	@Override
+	public ServiceResponse handleCall(ServiceCall s) {
+		if (s == null) {
+			return null;
+		}
+		String process = s.getProcessURI();
+		Binding binding = listeners.get(process);
+		if (binding == null) {
+			return new ServiceResponse(CallStatus.serviceSpecificFailure);
+		}
+		if (binding.bulkhead == null) {
+			return binding.listener.handleCall(s);
+		}
+		if (!binding.bulkhead.enter(process)) {
+			return Bulkhead.rejected();
+		}
+		try {
+			return binding.listener.handleCall(s);
+		} finally {
+			binding.bulkhead.exit(process);
+		}
+	}
+
+	/**
+	 * A listener with its limit of concurrent calls.
+	 */
+	private static final class Binding {
+		/**
+		 * The listener.
+		 */
+		private final ISListener listener;
+		/**
+		 * The limit of concurrent calls, or null if unlimited.
+		 */
+		private final Bulkhead bulkhead;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param listener
+		 *            The listener.
+		 * @param bulkhead
+		 *            The limit of concurrent calls, or null if unlimited.
+		 */
+		private Binding(ISListener listener, Bulkhead bulkhead) {
+			this.listener = listener;
+			this.bulkhead = bulkhead;
+		}
+	}
+
+}
@@ -21,15 +21,25 @@
  */
 package org.universAAL.utilities.api;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
 import org.universAAL.middleware.container.ModuleContext;
+import org.universAAL.middleware.container.utils.LogUtils;
 import org.universAAL.middleware.rdf.Resource;
 import org.universAAL.middleware.ui.UICaller;
+import org.universAAL.middleware.ui.UIRequest;
 import org.universAAL.middleware.ui.UIResponse;
 
 /**
  * This class is for internal use by the utility API only. It is just a UI
  * Caller that associates calls to its handleUIResponse method to an associated
- * ICListener.
+ * ICListener. Each sent UI Request can have its own listener, so that many
+ * dialogs can be waiting for a response at the same time: responses are
+ * routed to the listener of their dialog through a table of pending dialogs,
+ * which is bounded in size and forgets dialogs that do not get a response in
+ * time. Responses to dialogs that are not pending, because they were
+ * forgotten or never sent through this caller, are logged and discarded.
  *
  * @author alfiva
  *
@@ -37,10 +47,41 @@ import org.universAAL.middleware.ui.UIResponse;
 public class WrapperUI extends UICaller {
 
 	/**
-	 * The associated IUIListener.
+	 * Default maximum number of dialogs waiting for a response.
+	 */
+	public static final int DEFAULT_MAX_PENDING = 256;
+	/**
+	 * Default time in milliseconds a dialog can wait for a response.
+	 */
+	public static final long DEFAULT_EXPIRY = 60 * 60 * 1000;
+
+	/**
+	 * The associated IUIListener of responses without a dialog ID, which
+	 * cannot be looked up in the table of pending dialogs. It is the last
+	 * listener set or used.
 	 */
 	private IUIListener listener;
 
+	/**
+	 * The universAAL Module Context, for logging.
+	 */
+	private final ModuleContext owner;
+
+	/**
+	 * The pending dialogs, by dialog ID, in the order they were sent.
+	 */
+	private LinkedHashMap<String, Pending> pending = new LinkedHashMap<String, Pending>();
+
+	/**
+	 * Maximum number of pending dialogs.
+	 */
+	private int maxPending = DEFAULT_MAX_PENDING;
+
+	/**
+	 * Time in milliseconds a dialog can be pending.
+	 */
+	private long expiry = DEFAULT_EXPIRY;
+
 	/**
 	 * Constructor.
 	 *
@@ -49,6 +90,7 @@ public class WrapperUI extends UICaller {
 	 */
 	protected WrapperUI(ModuleContext context) {
 		super(context);
+		this.owner = context;
 	}
 
 	@Override
@@ -58,13 +100,33 @@ public class WrapperUI extends UICaller {
 
 	@Override
 	public void dialogAborted(String arg0, Resource data) {
-		// TODO Auto-generated method stub
+		if (arg0 != null) {
+			synchronized (this) {
+				pending.remove(arg0);
+			}
+		}
 	}
 
 	@Override
 	public void handleUIResponse(UIResponse r) {
-		if (listener != null) {
-			listener.handleUIResponse(r);
+		IUIListener l = null;
+		String id = r.getDialogID();
+		synchronized (this) {
+			if (id == null) {
+				l = listener;
+			} else {
+				Pending p = pending.remove(id);
+				if (p != null && p.expires >= System.currentTimeMillis()) {
+					l = p.listener;
+				}
+			}
+		}
+		if (l != null) {
+			l.handleUIResponse(r);
+		} else if (id != null) {
+			// Any other listener belongs to an unrelated dialog
+			LogUtils.logWarn(owner, getClass(), "handleUIResponse",
+					new Object[] { "Discarded response to a dialog that is not pending: ", id }, null);
 		}
 	}
 
@@ -74,7 +136,95 @@ public class WrapperUI extends UICaller {
 	 * @param listener
 	 *            The IUIListener to associate.
 	 */
-	public void setListener(IUIListener listener) {
+	public synchronized void setListener(IUIListener listener) {
 		this.listener = listener;
 	}
+
+	/**
+	 * Send a UI Request and associate the listener that will handle its
+	 * response.
+	 *
+	 * @param request
+	 *            The UI Request.
+	 * @param l
+	 *            The IUIListener that will handle the response to it.
+	 */
+	public void sendUIRequest(UIRequest request, IUIListener l) {
+		String id = request.getDialogID();
+		synchronized (this) {
+			listener = l;
+			if (id != null) {
+				long now = System.currentTimeMillis();
+				pending.remove(id);
+				purge(now);
+				pending.put(id, new Pending(l, now + expiry));
+			}
+		}
+		sendUIRequest(request);
+	}
+
+	/**
+	 * Set the limits of the table of dialogs waiting for a response.
+	 *
+	 * @param max
+	 *            Maximum number of pending dialogs. When exceeded, the oldest
+	 *            is forgotten.
+	 * @param millis
+	 *            Time in milliseconds after which a pending dialog is
+	 *            forgotten.
+	 */
+	public synchronized void setLimits(int max, long millis) {
+		this.maxPending = max;
+		this.expiry = millis;
+	}
+
+	/**
+	 * Forget the dialogs that expired, and the oldest ones beyond the maximum
+	 * allowed. Since dialogs are kept in sending order, only the oldest need
+	 * to be checked.
+	 *
+	 * @param now
+	 *            Current time in milliseconds.
+	 */
+	private void purge(long now) {
+		int excess = pending.size() + 1 - maxPending;
+		Iterator<Pending> iter = pending.values().iterator();
+		while (iter.hasNext()) {
+			Pending p = iter.next();
+			if (excess > 0 || p.expires < now) {
+				iter.remove();
+				excess--;
+			} else {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Listener of a pending dialog.
+	 */
+	private static final class Pending {
+		/**
+		 * The listener that will handle the response.
+		 */
+		private final IUIListener listener;
+		/**
+		 * Time in milliseconds when the dialog is forgotten.
+		 */
+		private final long expires;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param listener
+		 *            The listener that will handle the response.
+		 * @param expires
+		 *            Time in milliseconds when the dialog is forgotten.
+		 */
+		private Pending(IUIListener listener, long expires) {
+			this.listener = listener;
+			this.expires = expires;
+		}
+	}
+
 }
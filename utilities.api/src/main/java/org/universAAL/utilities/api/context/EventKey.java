@@ -0,0 +1,70 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api.context;
+
+import org.universAAL.middleware.context.ContextEvent;
+
+/**
+ * Helper class that identifies the piece of context that a Context Event is
+ * about: the combination of its subject and its predicate. Two events with the
+ * same key describe the same property of the same subject, so the newest one
+ * makes the older obsolete.
+ *
+ * @author alfiva
+ *
+ */
+public class EventKey {
+
+	/**
+	 * Separator between subject and predicate. It cannot be part of a URI.
+	 */
+	private static final char SEPARATOR = ' ';
+
+	private EventKey() {
+		// Disallow instantiating
+	}
+
+	/**
+	 * Get the key of an event.
+	 *
+	 * @param event
+	 *            The Context Event.
+	 * @return A String combining the URIs of its subject and predicate.
+	 */
+	public static String of(ContextEvent event) {
+		return of(event.getSubjectURI(), event.getRDFPredicate());
+	}
+
+	/**
+	 * Get the key of a subject and predicate.
+	 *
+	 * @param subjectURI
+	 *            The URI of the subject.
+	 * @param predicate
+	 *            The URI of the predicate.
+	 * @return A String combining both URIs.
+	 */
+	public static String of(String subjectURI, String predicate) {
+		return subjectURI + SEPARATOR + predicate;
+	}
+
+}
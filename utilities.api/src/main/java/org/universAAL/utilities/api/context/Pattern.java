@@ -21,8 +21,13 @@
  */
 package org.universAAL.utilities.api.context;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.universAAL.middleware.context.ContextEvent;
 import org.universAAL.middleware.context.ContextEventPattern;
+import org.universAAL.middleware.owl.Enumeration;
 import org.universAAL.middleware.owl.ManagedIndividual;
 import org.universAAL.middleware.owl.MergedRestriction;
 import org.universAAL.middleware.rdf.Resource;
@@ -36,6 +41,14 @@ import org.universAAL.middleware.rdf.Resource;
  * class extends ContextEventPattern it can be used as well in the native API,
  * and the other way around to use the native API to apply further restrictions
  * over the Pattern.
+ * <p/>
+ * When the same simple pattern is used by many subscribers or providers, the
+ * static <code>shared</code> method can be used instead of the constructor
+ * with types. It returns a single, sealed instance for each distinct
+ * combination of subject type, predicate and object type, built only the
+ * first time it is requested. Only patterns on types are shared, since their
+ * number is bounded by the ontologies in use. Patterns on exact subjects or
+ * objects are built with the constructors.
  *
  * @author alfiva
  *
@@ -56,6 +69,11 @@ public class Pattern extends ContextEventPattern {
 	 */
 	private static final String MSG_INST = "---SIMPLE UTILS TIP: You must "
 			+ "pass a valid ManagedIndivdual or DataType to this " + "UtilSubscriber constructor, or null.";
+	/**
+	 * The shared patterns, by canonical key. Only patterns restricted to types
+	 * are kept, so its size is bounded by the ontologies in use.
+	 */
+	private static final ConcurrentHashMap<String, Pattern> SHARED = new ConcurrentHashMap<String, Pattern>();
 
 	/**
 	 * Simple constructor to create a Context Event Pattern with restrictions on
@@ -220,4 +238,282 @@ public class Pattern extends ContextEventPattern {
 			}
 		}
 	}
+
+	/**
+	 * Constructor to create a single Context Event Pattern that matches events
+	 * about any of the given subjects, with any of the given predicates and any
+	 * of the given objects. This is equivalent to, and much cheaper to
+	 * evaluate than, one pattern per combination. Any of the arrays can be
+	 * null if no restriction is desired over that concept.
+	 *
+	 * @param subjs
+	 *            The instances one of which the event subject must equal. Null
+	 *            for any.
+	 * @param predicates
+	 *            The predicates one of which the event must equal. Null for
+	 *            any.
+	 * @param objs
+	 *            The instances one of which the event object must equal. Null
+	 *            for any.
+	 */
+	public Pattern(ManagedIndividual[] subjs, String[] predicates, Object[] objs) {
+		super();
+		if (subjs != null) {
+			List<Object> valid = new ArrayList<Object>(subjs.length);
+			for (int i = 0; i < subjs.length; i++) {
+				String uri = ManagedIndividual.getTypeURI(subjs[i]);
+				if (uri != null && Resource.isQualifiedName(uri)) {
+					valid.add(subjs[i]);
+				} else {
+					System.out.println(MSG_INST);
+				}
+			}
+			addOneOf(ContextEvent.PROP_RDF_SUBJECT, valid);
+		}
+		if (predicates != null) {
+			List<Object> valid = new ArrayList<Object>(predicates.length);
+			for (int i = 0; i < predicates.length; i++) {
+				if (predicates[i] != null && Resource.isQualifiedName(predicates[i])) {
+					valid.add(predicates[i]);
+				} else {
+					System.out.println(MSG_PRED);
+				}
+			}
+			if (valid.size() > 1) {
+				// Predicates are resources: enumerate them as such
+				for (int i = 0; i < valid.size(); i++) {
+					valid.set(i, new Resource((String) valid.get(i)));
+				}
+			}
+			addOneOf(ContextEvent.PROP_RDF_PREDICATE, valid);
+		}
+		if (objs != null) {
+			List<Object> valid = new ArrayList<Object>(objs.length);
+			for (int i = 0; i < objs.length; i++) {
+				String uri = ManagedIndividual.getTypeURI(objs[i]);
+				if (uri != null && Resource.isQualifiedName(uri)) {
+					valid.add(objs[i]);
+				} else {
+					System.out.println(MSG_INST);
+				}
+			}
+			addOneOf(ContextEvent.PROP_RDF_OBJECT, valid);
+		}
+	}
+
+	/**
+	 * Restrict a property to one of some values. A single value gets a fixed
+	 * value restriction, so that it can still be indexed. No values, if all
+	 * were invalid, get no restriction, like in the other constructors.
+	 *
+	 * @param prop
+	 *            The restricted property.
+	 * @param values
+	 *            The allowed values.
+	 */
+	private void addOneOf(String prop, List<Object> values) {
+		if (values.size() == 1) {
+			this.addRestriction(MergedRestriction.getFixedValueRestriction(prop, values.get(0)));
+		} else if (values.size() > 1) {
+			this.addRestriction(MergedRestriction.getAllValuesRestriction(prop, new Enumeration(values.toArray())));
+		}
+	}
+
+	/**
+	 * Get the shared pattern with restrictions on the type of subject, the
+	 * predicate, and the type of object. It is equivalent to the Pattern
+	 * built with the same constructor, but it is sealed: it cannot be
+	 * modified in any way, since all its users share it.
+	 *
+	 * @param subjTypeURI
+	 *            The type URI that the event subject must have. Null for any.
+	 * @param predicate
+	 *            The exact predicate that the event must equal. Null for any.
+	 * @param objTypeURI
+	 *            The type URI that the event object must have. Null for any.
+	 * @return The shared pattern.
+	 */
+	public static Pattern shared(String subjTypeURI, String predicate, String objTypeURI) {
+		String key = key(type(subjTypeURI), predicate, type(objTypeURI));
+		Pattern p = SHARED.get(key);
+		if (p == null) {
+			p = intern(key, new Shared(subjTypeURI, predicate, objTypeURI));
+		}
+		return p;
+	}
+
+	/**
+	 * Store a newly built shared pattern, unless another thread did it first.
+	 *
+	 * @param key
+	 *            The canonical key of the pattern.
+	 * @param p
+	 *            The newly built pattern.
+	 * @return The pattern that ended up being shared.
+	 */
+	private static Pattern intern(String key, Pattern p) {
+		Pattern previous = SHARED.putIfAbsent(key, p);
+		return previous != null ? previous : p;
+	}
+
+	/**
+	 * Build the canonical key of a pattern.
+	 *
+	 * @param subj
+	 *            Canonical form of the subject restriction.
+	 * @param predicate
+	 *            The predicate, or null.
+	 * @param obj
+	 *            Canonical form of the object restriction.
+	 * @return The key.
+	 */
+	private static String key(String subj, String predicate, String obj) {
+		return subj + ' ' + (predicate == null ? "" : predicate) + ' ' + obj;
+	}
+
+	/**
+	 * Canonical form of a restriction on a type.
+	 *
+	 * @param typeURI
+	 *            The type URI, or null.
+	 * @return The canonical form.
+	 */
+	private static String type(String typeURI) {
+		return typeURI == null ? "" : "T:" + typeURI;
+	}
+
+	/**
+	 * A Pattern that cannot be modified once built.
+	 */
+	private static final class Shared extends Pattern {
+		/**
+		 * Whether the construction finished.
+		 */
+		private final boolean sealed;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param subjTypeURI
+		 *            The type URI that the event subject must have.
+		 * @param predicate
+		 *            The exact predicate that the event must equal.
+		 * @param objTypeURI
+		 *            The type URI that the event object must have.
+		 */
+		private Shared(String subjTypeURI, String predicate, String objTypeURI) {
+			super(subjTypeURI, predicate, objTypeURI);
+			sealed = true;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.universAAL.middleware.context.ContextEventPattern#addRestriction
+		 * (org.universAAL.middleware.owl.MergedRestriction)
+		 */
+		@Override
+		public boolean addRestriction(MergedRestriction r) {
+			checkSealed();
+			return super.addRestriction(r);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.universAAL.middleware.rdf.Resource#setProperty(java.lang.String,
+		 * java.lang.Object)
+		 */
+		@Override
+		public boolean setProperty(String propURI, Object value) {
+			checkSealed();
+			return super.setProperty(propURI, value);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.universAAL.middleware.rdf.Resource#changeProperty(java.lang.String,
+		 * java.lang.Object)
+		 */
+		@Override
+		public boolean changeProperty(String propURI, Object value) {
+			checkSealed();
+			return super.changeProperty(propURI, value);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.universAAL.middleware.rdf.Resource#setPropertyPath(java.lang.String[],
+		 * java.lang.Object)
+		 */
+		@Override
+		public boolean setPropertyPath(String[] propPath, Object value) {
+			checkSealed();
+			return super.setPropertyPath(propPath, value);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.universAAL.middleware.rdf.Resource#setPropertyPath(java.lang.String[],
+		 * java.lang.Object, boolean)
+		 */
+		@Override
+		public boolean setPropertyPath(String[] propPath, Object value, boolean force) {
+			checkSealed();
+			return super.setPropertyPath(propPath, value, force);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.universAAL.middleware.rdf.Resource#addType(java.lang.String, boolean)
+		 */
+		@Override
+		public boolean addType(String typeURI, boolean blockFurtherTypes) {
+			checkSealed();
+			return super.addType(typeURI, blockFurtherTypes);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.universAAL.middleware.rdf.Resource#setResourceComment(java.lang.String)
+		 */
+		@Override
+		public void setResourceComment(String comment) {
+			checkSealed();
+			super.setResourceComment(comment);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.universAAL.middleware.rdf.Resource#setResourceLabel(java.lang.String)
+		 */
+		@Override
+		public void setResourceLabel(String label) {
+			checkSealed();
+			super.setResourceLabel(label);
+		}
+
+		/**
+		 * Fail if the construction already finished.
+		 */
+		private void checkSealed() {
+			if (sealed) {
+				throw new UnsupportedOperationException("Shared patterns cannot be modified");
+			}
+		}
+	}
 }
@@ -0,0 +1,448 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api.context;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.universAAL.middleware.context.ContextEvent;
+import org.universAAL.middleware.context.ContextEventPattern;
+import org.universAAL.middleware.owl.OntologyManagement;
+
+/**
+ * Local matcher of Context Events against many Context Event Patterns, each
+ * associated to a value (e.g. a listener). Instead of checking every pattern,
+ * patterns are indexed by their fixed predicate and then by their exact
+ * subject or subject type, so that the full restriction check is only done
+ * on the few candidates that can match an event. It also keeps how many
+ * events matched each pattern.
+ * <p/>
+ * The index can be read concurrently without locking: it is rebuilt as a
+ * whole every time patterns are added or removed, which is expected to be
+ * much less frequent than matching.
+ * <p/>
+ * Example: Find the listeners interested in an event.
+ * <code>
+ * <p/>PatternIndex&lt;ICListener&gt; index = new PatternIndex&lt;ICListener&gt;();
+ * <p/>index.add(patterns, listener);
+ * <p/>...
+ * <p/>List&lt;ICListener&gt; targets = index.match(event);
+ * </code>
+ * <p/>
+ *
+ * @param <T>
+ *            Type of the values associated to the patterns.
+ *
+ * @author alfiva
+ *
+ */
+public class PatternIndex<T> {
+
+	/**
+	 * The current snapshot of the index.
+	 */
+	private volatile Snapshot<T> snapshot = new Snapshot<T>(new ArrayList<Entry<T>>(0));
+
+	/**
+	 * Number of patterns fully checked against events.
+	 */
+	private final AtomicLong checked = new AtomicLong();
+
+	/**
+	 * Associate a value to a pattern.
+	 *
+	 * @param pattern
+	 *            The pattern.
+	 * @param value
+	 *            The value to return when an event matches the pattern.
+	 */
+	public void add(ContextEventPattern pattern, T value) {
+		add(new ContextEventPattern[] { pattern }, value);
+	}
+
+	/**
+	 * Associate a value to several patterns.
+	 *
+	 * @param patterns
+	 *            The patterns.
+	 * @param value
+	 *            The value to return when an event matches any of the
+	 *            patterns.
+	 */
+	public synchronized void add(ContextEventPattern[] patterns, T value) {
+		List<Entry<T>> entries = new ArrayList<Entry<T>>(snapshot.all.size() + patterns.length);
+		entries.addAll(snapshot.all);
+		for (int i = 0; i < patterns.length; i++) {
+			entries.add(new Entry<T>(patterns[i], value));
+		}
+		snapshot = new Snapshot<T>(entries);
+	}
+
+	/**
+	 * Remove all the patterns associated to a value.
+	 *
+	 * @param value
+	 *            The value.
+	 * @return The number of removed patterns.
+	 */
+	public synchronized int remove(T value) {
+		List<Entry<T>> entries = new ArrayList<Entry<T>>(snapshot.all.size());
+		for (int i = 0; i < snapshot.all.size(); i++) {
+			Entry<T> e = snapshot.all.get(i);
+			if (e.value != value) {
+				entries.add(e);
+			}
+		}
+		int removed = snapshot.all.size() - entries.size();
+		if (removed > 0) {
+			snapshot = new Snapshot<T>(entries);
+		}
+		return removed;
+	}
+
+	/**
+	 * Get the values of the patterns that match an event. A value associated
+	 * to several matching patterns is returned only once.
+	 *
+	 * @param event
+	 *            The event.
+	 * @return The values, in the order they were added. May be empty.
+	 */
+	public List<T> match(ContextEvent event) {
+		List<Entry<T>> candidates = snapshot.candidates(event);
+		List<T> result = new ArrayList<T>(Math.min(candidates.size(), 4));
+		if (candidates.size() == 1) {
+			Entry<T> e = candidates.get(0);
+			checked.incrementAndGet();
+			if (e.pattern.matches(event)) {
+				e.hits.incrementAndGet();
+				result.add(e.value);
+			}
+			return result;
+		}
+		IdentityHashMap<T, T> found = new IdentityHashMap<T, T>();
+		for (int i = 0; i < candidates.size(); i++) {
+			Entry<T> e = candidates.get(i);
+			checked.incrementAndGet();
+			if (e.pattern.matches(event)) {
+				e.hits.incrementAndGet();
+				if (!found.containsKey(e.value)) {
+					found.put(e.value, e.value);
+					result.add(e.value);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Tell if any pattern matches an event.
+	 *
+	 * @param event
+	 *            The event.
+	 * @return <code>true</code> if at least one pattern matches it.
+	 */
+	public boolean matches(ContextEvent event) {
+		List<Entry<T>> candidates = snapshot.candidates(event);
+		for (int i = 0; i < candidates.size(); i++) {
+			Entry<T> e = candidates.get(i);
+			checked.incrementAndGet();
+			if (e.pattern.matches(event)) {
+				e.hits.incrementAndGet();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get the number of events that matched a pattern.
+	 *
+	 * @param pattern
+	 *            The pattern, as it was added.
+	 * @return The number of matched events, added up for all the values it is
+	 *         associated to.
+	 */
+	public long getHits(ContextEventPattern pattern) {
+		List<Entry<T>> all = snapshot.all;
+		long hits = 0;
+		for (int i = 0; i < all.size(); i++) {
+			Entry<T> e = all.get(i);
+			if (e.pattern == pattern) {
+				hits += e.hits.get();
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * Get the number of patterns fully checked against events so far, which is
+	 * what the index saves compared to checking all of them for every event.
+	 *
+	 * @return The number of checks.
+	 */
+	public long getChecked() {
+		return checked.get();
+	}
+
+	/**
+	 * Get the number of patterns in the index.
+	 *
+	 * @return The number of patterns.
+	 */
+	public int size() {
+		return snapshot.all.size();
+	}
+
+	/**
+	 * Association of a single pattern to its value.
+	 *
+	 * @param <T>
+	 *            Type of the value.
+	 */
+	private static final class Entry<T> {
+		/**
+		 * The pattern.
+		 */
+		private final ContextEventPattern pattern;
+		/**
+		 * The value associated to the pattern.
+		 */
+		private final T value;
+		/**
+		 * Number of events that matched the pattern.
+		 */
+		private final AtomicLong hits = new AtomicLong();
+
+		/**
+		 * Constructor.
+		 *
+		 * @param pattern
+		 *            The pattern.
+		 * @param value
+		 *            The value associated to the pattern.
+		 */
+		private Entry(ContextEventPattern pattern, T value) {
+			this.pattern = pattern;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Immutable index of entries, first by fixed predicate and then by exact
+	 * subject or subject type. Entries whose pattern does not fix one of these
+	 * are kept under the <code>null</code> key.
+	 *
+	 * @param <T>
+	 *            Type of the values.
+	 */
+	private static final class Snapshot<T> {
+		/**
+		 * All the entries, in the order they were added.
+		 */
+		private final List<Entry<T>> all;
+		/**
+		 * Entries by predicate URI, with <code>null</code> for any predicate.
+		 */
+		private final Map<String, Bucket<T>> byPredicate = new HashMap<String, Bucket<T>>();
+
+		/**
+		 * Build the index of the given entries.
+		 *
+		 * @param entries
+		 *            The entries.
+		 */
+		private Snapshot(List<Entry<T>> entries) {
+			all = entries;
+			for (int i = 0; i < entries.size(); i++) {
+				Entry<T> e = entries.get(i);
+				ContextEventPattern.Indices ind = e.pattern.getIndices();
+				String[] preds = ind == null ? null : ind.getPredicates();
+				if (preds == null || preds.length == 0) {
+					preds = new String[] { null };
+				}
+				for (int j = 0; j < preds.length; j++) {
+					Bucket<T> b = byPredicate.get(preds[j]);
+					if (b == null) {
+						b = new Bucket<T>();
+						byPredicate.put(preds[j], b);
+					}
+					b.add(ind, e);
+				}
+			}
+		}
+
+		/**
+		 * Get the entries that may match the event: those with its predicate
+		 * or any predicate, and with its subject, its subject type or any
+		 * subject.
+		 *
+		 * @param event
+		 *            The event.
+		 * @return The candidate entries, to be checked against the event.
+		 */
+		private List<Entry<T>> candidates(ContextEvent event) {
+			Bucket<T> exact = byPredicate.get(event.getRDFPredicate());
+			Bucket<T> any = byPredicate.get(null);
+			String subject = event.getSubjectURI();
+			String type = event.getSubjectTypeURI();
+			if (any == null) {
+				return exact == null ? new ArrayList<Entry<T>>(0) : exact.get(subject, type);
+			}
+			if (exact == null) {
+				return any.get(subject, type);
+			}
+			List<Entry<T>> result = new ArrayList<Entry<T>>(exact.get(subject, type));
+			result.addAll(any.get(subject, type));
+			return result;
+		}
+	}
+
+	/**
+	 * Entries sharing the same predicate key, indexed by exact subject or else
+	 * by subject type. Because a subject may belong to subclasses of the
+	 * indexed type, the entries applicable to each event subject type are
+	 * resolved once and memorized.
+	 *
+	 * @param <T>
+	 *            Type of the values.
+	 */
+	private static final class Bucket<T> {
+		/**
+		 * Entries by exact subject URI.
+		 */
+		private final Map<String, List<Entry<T>>> bySubject = new HashMap<String, List<Entry<T>>>();
+		/**
+		 * Entries by subject type URI, with <code>null</code> for any type.
+		 */
+		private final Map<String, List<Entry<T>>> byType = new HashMap<String, List<Entry<T>>>();
+		/**
+		 * Entries already resolved for each event subject type.
+		 */
+		private final Map<String, List<Entry<T>>> resolved = new ConcurrentHashMap<String, List<Entry<T>>>();
+
+		/**
+		 * Add an entry under the subjects or subject types of its pattern.
+		 *
+		 * @param ind
+		 *            The indices of the pattern, or null.
+		 * @param e
+		 *            The entry.
+		 */
+		private void add(ContextEventPattern.Indices ind, Entry<T> e) {
+			String[] subjects = ind == null ? null : ind.getSubjects();
+			if (subjects != null && subjects.length > 0) {
+				for (int i = 0; i < subjects.length; i++) {
+					put(bySubject, subjects[i], e);
+				}
+				return;
+			}
+			String[] types = ind == null ? null : ind.getSubjectTypes();
+			if (types == null || types.length == 0) {
+				types = new String[] { null };
+			}
+			for (int i = 0; i < types.length; i++) {
+				put(byType, types[i], e);
+			}
+		}
+
+		/**
+		 * Get the entries applicable to a subject.
+		 *
+		 * @param subject
+		 *            The subject URI of the event.
+		 * @param type
+		 *            The subject type of the event.
+		 * @return The entries under that subject, that type, its superclasses,
+		 *         or any type.
+		 */
+		private List<Entry<T>> get(String subject, String type) {
+			List<Entry<T>> typed = getByType(type);
+			List<Entry<T>> exact = subject == null ? null : bySubject.get(subject);
+			if (exact == null) {
+				return typed;
+			}
+			List<Entry<T>> result = new ArrayList<Entry<T>>(exact);
+			result.addAll(typed);
+			return result;
+		}
+
+		/**
+		 * Get the entries applicable to a subject type.
+		 *
+		 * @param type
+		 *            The subject type of the event.
+		 * @return The entries under that type, its superclasses, or any type.
+		 */
+		private List<Entry<T>> getByType(String type) {
+			if (type == null) {
+				// Unknown type: only the matching can tell
+				List<Entry<T>> list = new ArrayList<Entry<T>>();
+				Iterator<List<Entry<T>>> iter = byType.values().iterator();
+				while (iter.hasNext()) {
+					list.addAll(iter.next());
+				}
+				return list;
+			}
+			List<Entry<T>> list = resolved.get(type);
+			if (list == null) {
+				list = new ArrayList<Entry<T>>();
+				Iterator<Map.Entry<String, List<Entry<T>>>> iter = byType.entrySet().iterator();
+				while (iter.hasNext()) {
+					Map.Entry<String, List<Entry<T>>> typed = iter.next();
+					if (typed.getKey() == null || typed.getKey().equals(type)
+							|| OntologyManagement.getInstance().isEqualOrSubClassOf(type, typed.getKey())) {
+						list.addAll(typed.getValue());
+					}
+				}
+				resolved.put(type, list);
+			}
+			return list;
+		}
+
+		/**
+		 * Add an entry to a list in a map.
+		 *
+		 * @param map
+		 *            The map.
+		 * @param key
+		 *            The key of the list.
+		 * @param e
+		 *            The entry.
+		 */
+		private static <T> void put(Map<String, List<Entry<T>>> map, String key, Entry<T> e) {
+			List<Entry<T>> list = map.get(key);
+			if (list == null) {
+				list = new ArrayList<Entry<T>>(2);
+				map.put(key, list);
+			}
+			list.add(e);
+		}
+	}
+
+}
@@ -0,0 +1,407 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api.context.mid;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.universAAL.middleware.context.ContextEvent;
+import org.universAAL.middleware.owl.OntologyManagement;
+import org.universAAL.utilities.api.ICListener;
+import org.universAAL.utilities.api.context.EventKey;
+
+/**
+ * A local store of the last known value of context. It is an ICListener, so it
+ * can be fed by subscribing it with <code>UAAL.subscribeC()</code>, and keeps
+ * the latest received Context Event about each subject and predicate. These
+ * can be then queried synchronously, without going to the buses, by subject,
+ * predicate or subject type. Optionally, events older than a time to live are
+ * no longer returned, and they are removed as new events arrive, at most once
+ * per time to live.
+ * <p/>
+ * Example: Keep the status of all lights at hand.
+ * <code>
+ * <p/>ContextCache lights = new ContextCache(0);
+ * <p/>u.subscribeC(new ContextEventPattern[] { new Pattern(LightActuator.MY_URI,
+ * <p/>		LightActuator.PROP_HAS_VALUE, (String) null) }, lights);
+ * <p/>...
+ * <p/>ContextEvent last = lights.get(LIGHT_URI, LightActuator.PROP_HAS_VALUE);
+ * </code>
+ * <p/>
+ *
+ * @author alfiva
+ *
+ */
+public class ContextCache implements ICListener {
+
+	/**
+	 * Latest event of each subject and predicate.
+	 */
+	private HashMap<String, ContextEvent> events = new HashMap<String, ContextEvent>();
+	/**
+	 * Time in milliseconds when each event was stored.
+	 */
+	private HashMap<String, Long> stored = new HashMap<String, Long>();
+	/**
+	 * Keys of the events of each subject.
+	 */
+	private HashMap<String, Set<String>> bySubject = new HashMap<String, Set<String>>();
+	/**
+	 * Keys of the events of each predicate.
+	 */
+	private HashMap<String, Set<String>> byPredicate = new HashMap<String, Set<String>>();
+	/**
+	 * Keys of the events of each subject type.
+	 */
+	private HashMap<String, Set<String>> byType = new HashMap<String, Set<String>>();
+	/**
+	 * Lock allowing concurrent queries.
+	 */
+	private ReadWriteLock lock = new ReentrantReadWriteLock();
+	/**
+	 * Time to live of the events in milliseconds. Zero for no limit.
+	 */
+	private long ttl;
+	/**
+	 * Time in milliseconds when the expired events were last removed.
+	 */
+	private long purged;
+
+	/**
+	 * Create an empty cache.
+	 *
+	 * @param ttl
+	 *            Time in milliseconds after which a stored event is no longer
+	 *            returned. Zero for no limit.
+	 */
+	public ContextCache(long ttl) {
+		this.ttl = ttl;
+		this.purged = System.currentTimeMillis();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.universAAL.utilities.api.ICListener#handleContextEvent(org.universAAL
+	 * .middleware.context.ContextEvent)
+	 */
+	public void handleContextEvent(ContextEvent event) {
+		String subject = event.getSubjectURI();
+		String predicate = event.getRDFPredicate();
+		String key = EventKey.of(subject, predicate);
+		lock.writeLock().lock();
+		try {
+			long now = System.currentTimeMillis();
+			// Scanning once per time to live keeps the cost per event constant
+			if (ttl > 0 && now - purged >= ttl) {
+				removeExpired(now - ttl);
+				purged = now;
+			}
+			ContextEvent previous = events.get(key);
+			if (previous != null && isOlder(event, previous)) {
+				return;
+			}
+			events.put(key, event);
+			stored.put(key, Long.valueOf(System.currentTimeMillis()));
+			if (previous == null) {
+				index(bySubject, subject, key);
+				index(byPredicate, predicate, key);
+				index(byType, event.getSubjectTypeURI(), key);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Get the latest event about a subject and predicate.
+	 *
+	 * @param subjectURI
+	 *            URI of the subject.
+	 * @param predicate
+	 *            URI of the predicate.
+	 * @return The event, or null if there is none or it expired.
+	 */
+	public ContextEvent get(String subjectURI, String predicate) {
+		String key = EventKey.of(subjectURI, predicate);
+		long limit = limit();
+		lock.readLock().lock();
+		try {
+			return live(key, limit);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Get the latest events about a subject, one for each predicate.
+	 *
+	 * @param subjectURI
+	 *            URI of the subject.
+	 * @return The events that did not expire. May be empty.
+	 */
+	public List<ContextEvent> getBySubject(String subjectURI) {
+		return getIndexed(bySubject, subjectURI);
+	}
+
+	/**
+	 * Get the latest events with a predicate, one for each subject.
+	 *
+	 * @param predicate
+	 *            URI of the predicate.
+	 * @return The events that did not expire. May be empty.
+	 */
+	public List<ContextEvent> getByPredicate(String predicate) {
+		return getIndexed(byPredicate, predicate);
+	}
+
+	/**
+	 * Get the latest events about subjects of a type or any of its
+	 * subclasses, one for each subject and predicate.
+	 *
+	 * @param typeURI
+	 *            URI of the subject type.
+	 * @return The events that did not expire. May be empty.
+	 */
+	public List<ContextEvent> getBySubjectType(String typeURI) {
+		long limit = limit();
+		List<ContextEvent> result = new ArrayList<ContextEvent>();
+		lock.readLock().lock();
+		try {
+			Iterator<Map.Entry<String, Set<String>>> iter = byType.entrySet().iterator();
+			while (iter.hasNext()) {
+				Map.Entry<String, Set<String>> typed = iter.next();
+				String type = typed.getKey();
+				if (type != null && (type.equals(typeURI)
+						|| OntologyManagement.getInstance().isEqualOrSubClassOf(type, typeURI))) {
+					collect(typed.getValue(), limit, result);
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * Remove the events that expired, to release memory. Expired events are
+	 * never returned anyway, and they are also removed as new events arrive,
+	 * so this is only needed to release them when no events arrive.
+	 */
+	public void purge() {
+		if (ttl <= 0) {
+			return;
+		}
+		long limit = limit();
+		lock.writeLock().lock();
+		try {
+			removeExpired(limit);
+			purged = System.currentTimeMillis();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove all the events.
+	 */
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			events.clear();
+			stored.clear();
+			bySubject.clear();
+			byPredicate.clear();
+			byType.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Get the number of stored events, including the expired ones not yet
+	 * purged.
+	 *
+	 * @return Number of events.
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return events.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove the events stored before a time. The write lock must be held.
+	 *
+	 * @param limit
+	 *            Time in milliseconds of the oldest live event.
+	 */
+	private void removeExpired(long limit) {
+		Iterator<Map.Entry<String, Long>> iter = stored.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry<String, Long> entry = iter.next();
+			if (entry.getValue().longValue() < limit) {
+				iter.remove();
+				ContextEvent event = events.remove(entry.getKey());
+				unindex(bySubject, event.getSubjectURI(), entry.getKey());
+				unindex(byPredicate, event.getRDFPredicate(), entry.getKey());
+				unindex(byType, event.getSubjectTypeURI(), entry.getKey());
+			}
+		}
+	}
+
+	/**
+	 * Get the live events under a value of an index.
+	 *
+	 * @param index
+	 *            The index.
+	 * @param value
+	 *            The indexed value.
+	 * @return The events that did not expire.
+	 */
+	private List<ContextEvent> getIndexed(HashMap<String, Set<String>> index, String value) {
+		long limit = limit();
+		List<ContextEvent> result = new ArrayList<ContextEvent>();
+		lock.readLock().lock();
+		try {
+			Set<String> keys = index.get(value);
+			if (keys != null) {
+				collect(keys, limit, result);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * Add the live events of some keys to a list.
+	 *
+	 * @param keys
+	 *            The keys.
+	 * @param limit
+	 *            Time in milliseconds of the oldest live event.
+	 * @param result
+	 *            The list.
+	 */
+	private void collect(Set<String> keys, long limit, List<ContextEvent> result) {
+		Iterator<String> iter = keys.iterator();
+		while (iter.hasNext()) {
+			ContextEvent event = live(iter.next(), limit);
+			if (event != null) {
+				result.add(event);
+			}
+		}
+	}
+
+	/**
+	 * Get an event if it did not expire.
+	 *
+	 * @param key
+	 *            The key of the event.
+	 * @param limit
+	 *            Time in milliseconds of the oldest live event.
+	 * @return The event, or null.
+	 */
+	private ContextEvent live(String key, long limit) {
+		Long time = stored.get(key);
+		if (time == null || time.longValue() < limit) {
+			return null;
+		}
+		return events.get(key);
+	}
+
+	/**
+	 * Get the time of the oldest live event.
+	 *
+	 * @return Time in milliseconds.
+	 */
+	private long limit() {
+		return ttl > 0 ? System.currentTimeMillis() - ttl : Long.MIN_VALUE;
+	}
+
+	/**
+	 * Tell if an event is older than another, by their timestamps.
+	 *
+	 * @param event
+	 *            An event.
+	 * @param other
+	 *            Another event about the same subject and predicate.
+	 * @return <code>true</code> only if the event is known to be older.
+	 */
+	private static boolean isOlder(ContextEvent event, ContextEvent other) {
+		Long t1 = event.getTimestamp();
+		Long t2 = other.getTimestamp();
+		return t1 != null && t2 != null && t1.longValue() < t2.longValue();
+	}
+
+	/**
+	 * Add a key under a value of an index.
+	 *
+	 * @param index
+	 *            The index.
+	 * @param value
+	 *            The indexed value.
+	 * @param key
+	 *            The key of the event.
+	 */
+	private static void index(HashMap<String, Set<String>> index, String value, String key) {
+		Set<String> keys = index.get(value);
+		if (keys == null) {
+			keys = new HashSet<String>();
+			index.put(value, keys);
+		}
+		keys.add(key);
+	}
+
+	/**
+	 * Remove a key from a value of an index.
+	 *
+	 * @param index
+	 *            The index.
+	 * @param value
+	 *            The indexed value.
+	 * @param key
+	 *            The key of the event.
+	 */
+	private static void unindex(HashMap<String, Set<String>> index, String value, String key) {
+		Set<String> keys = index.get(value);
+		if (keys != null) {
+			keys.remove(key);
+			if (keys.isEmpty()) {
+				index.remove(value);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api.context.mid;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is for internal use by the subscribers of this package only. It
+ * owns the threads that run the periodic tasks of all of them, like the
+ * deliveries of the coalescing subscribers. The threads are daemons, created
+ * when the first task is scheduled and stopped when the last one is
+ * cancelled.
+ *
+ * @author alfiva
+ *
+ */
+final class SubscriberScheduler {
+
+	/**
+	 * The threads, or null if there are no tasks.
+	 */
+	private static ScheduledThreadPoolExecutor executor;
+
+	/**
+	 * Number of scheduled tasks not cancelled yet.
+	 */
+	private static int tasks = 0;
+
+	/**
+	 * Disallow instantiating.
+	 */
+	private SubscriberScheduler() {
+	}
+
+	/**
+	 * Run a task periodically, with a fixed delay between runs. The task must
+	 * be cancelled exactly once, with <code>cancel()</code>.
+	 *
+	 * @param task
+	 *            The task.
+	 * @param delay
+	 *            Time in milliseconds before the first run and between runs.
+	 * @return The handle of the scheduled task.
+	 */
+	static synchronized ScheduledFuture<?> schedule(Runnable task, long delay) {
+		if (executor == null) {
+			executor = new ScheduledThreadPoolExecutor(Runtime.getRuntime().availableProcessors(),
+					new ThreadFactory() {
+						public Thread newThread(Runnable run) {
+							Thread t = new Thread(run, "UAAL-subscriber-scheduler");
+							t.setDaemon(true);
+							return t;
+						}
+					});
+		}
+		ScheduledFuture<?> future = executor.scheduleWithFixedDelay(task, delay, delay, TimeUnit.MILLISECONDS);
+		tasks++;
+		return future;
+	}
+
+	/**
+	 * Cancel a task, stopping the threads if it was the last one.
+	 *
+	 * @param future
+	 *            The handle of the scheduled task.
+	 */
+	static synchronized void cancel(ScheduledFuture<?> future) {
+		future.cancel(false);
+		if (--tasks == 0) {
+			executor.shutdown();
+			executor = null;
+		} else {
+			// Do not keep the cancelled task until its next run time
+			executor.purge();
+		}
+	}
+
+}
@@ -0,0 +1,522 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api.context.mid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+import org.universAAL.middleware.container.ModuleContext;
+import org.universAAL.middleware.container.utils.LogUtils;
+import org.universAAL.middleware.context.ContextEvent;
+import org.universAAL.middleware.owl.ManagedIndividual;
+import org.universAAL.utilities.api.context.EventKey;
+
+/**
+ * This abstract class can be extended to create a simple Context Subscriber
+ * that aggregates numeric values instead of handling raw events. Like
+ * UtilSubscriber, it allows specifying everything it needs in its
+ * constructor. For each subject and predicate, it keeps a sliding window with
+ * the latest numeric objects of the received events, limited in number of
+ * values and optionally in age. Events with non-numeric objects are ignored,
+ * and so are events received before the constructor finishes.
+ * <p/>
+ * Your class that extends this receives the statistics of a window
+ * ({@link WindowStats}) in the handleWindow method when the window closes,
+ * which by default happens every time it has received as many new values as
+ * its size, and optionally also in the handleThreshold method when the mean
+ * of the window crosses the configured thresholds. Windows that close by time
+ * are also checked periodically, so the last values of a stream that goes
+ * quiet are still delivered.
+ * <p/>
+ * Example: A subscriber that gets the statistics of the last 60 power
+ * readings of each meter, every 10 readings.
+ * <code>
+ * <p/>subscriber = new SubscriberExample(context, PowerMeter.MY_URI,
+ * <p/>		PowerMeter.PROP_HAS_VALUE, null, 60, 0);
+ * <p/>subscriber.setEmitEvery(10, 0);
+ * </code>
+ * <p/>
+ *
+ * @author alfiva
+ *
+ */
+public abstract class UtilAggregatingSubscriber extends UtilSubscriber {
+
+	/**
+	 * The window of each subject and predicate. Null until the constructor
+	 * finishes, since events may arrive while the superclass is still
+	 * registering the subscriber.
+	 */
+	private HashMap<String, Window> windows;
+	/**
+	 * Maximum number of values in a window.
+	 */
+	private int size;
+	/**
+	 * Maximum age in milliseconds of the values in a window. Zero for no
+	 * limit.
+	 */
+	private long span;
+	/**
+	 * Number of new values after which a window closes. Zero for never.
+	 */
+	private int hop;
+	/**
+	 * Time in milliseconds after which a window closes. Zero for never.
+	 */
+	private long period = 0;
+	/**
+	 * Lower threshold of the mean.
+	 */
+	private double low = Double.NEGATIVE_INFINITY;
+	/**
+	 * Upper threshold of the mean.
+	 */
+	private double high = Double.POSITIVE_INFINITY;
+	/**
+	 * The universAAL module context, for logging.
+	 */
+	private ModuleContext owner;
+	/**
+	 * The periodic task that closes the windows by time, or null if none.
+	 */
+	private ScheduledFuture<?> task;
+
+	/**
+	 * Create an aggregating Context Subscriber that will listen to the events
+	 * matching what is specified in the constructor.
+	 *
+	 * @param context
+	 *            The universAAL module context.
+	 * @param subjTypeURI
+	 *            The type URI that the provided events subject must have. Null
+	 *            for any.
+	 * @param predicate
+	 *            The exact predicate that the provided events must equal. Null
+	 *            for any.
+	 * @param objTypeURI
+	 *            The type URI that the provided events object must have. Null
+	 *            for any.
+	 * @param size
+	 *            Maximum number of values in a window. Must be greater than
+	 *            zero.
+	 * @param span
+	 *            Maximum age in milliseconds of the values in a window. Zero
+	 *            for no limit.
+	 * @throws IllegalArgumentException
+	 *             If the size is not greater than zero or the span is negative.
+	 */
+	protected UtilAggregatingSubscriber(ModuleContext context, String subjTypeURI, String predicate,
+			String objTypeURI, int size, long span) {
+		super(checked(context, size, span), subjTypeURI, predicate, objTypeURI);
+		init(context, size, span);
+	}
+
+	/**
+	 * Create an aggregating Context Subscriber that will listen to the events
+	 * matching what is specified in the constructor.
+	 *
+	 * @param context
+	 *            The universAAL module context.
+	 * @param subj
+	 *            The exact instance that the provided events subject must
+	 *            equal. Null for any.
+	 * @param predicate
+	 *            The exact predicate that the provided events must equal. Null
+	 *            for any.
+	 * @param objTypeURI
+	 *            The type URI that the provided events object must have. Null
+	 *            for any.
+	 * @param size
+	 *            Maximum number of values in a window. Must be greater than
+	 *            zero.
+	 * @param span
+	 *            Maximum age in milliseconds of the values in a window. Zero
+	 *            for no limit.
+	 * @throws IllegalArgumentException
+	 *             If the size is not greater than zero or the span is negative.
+	 */
+	protected UtilAggregatingSubscriber(ModuleContext context, ManagedIndividual subj, String predicate,
+			String objTypeURI, int size, long span) {
+		super(checked(context, size, span), subj, predicate, objTypeURI);
+		init(context, size, span);
+	}
+
+	/**
+	 * Validate the limits of the windows before the subscriber is registered.
+	 *
+	 * @param context
+	 *            The universAAL module context.
+	 * @param size
+	 *            Maximum number of values in a window.
+	 * @param span
+	 *            Maximum age in milliseconds of the values in a window.
+	 * @return The same context.
+	 */
+	private static ModuleContext checked(ModuleContext context, int size, long span) {
+		if (size <= 0 || span < 0) {
+			throw new IllegalArgumentException("Invalid window size " + size + " or span " + span);
+		}
+		return context;
+	}
+
+	/**
+	 * Set the limits of the windows and start accepting values.
+	 *
+	 * @param context
+	 *            The universAAL module context.
+	 * @param size
+	 *            Maximum number of values in a window.
+	 * @param span
+	 *            Maximum age in milliseconds of the values in a window.
+	 */
+	private synchronized void init(ModuleContext context, int size, long span) {
+		this.owner = context;
+		this.size = size;
+		this.span = span;
+		this.hop = size;
+		this.windows = new HashMap<String, Window>();
+	}
+
+	/**
+	 * Set when windows close. A window closes when any of the conditions is
+	 * met, which is checked every time it receives a value. Windows that did
+	 * not receive values in time are also closed by a periodic check, no later
+	 * than twice the given time after they last closed. By default a window
+	 * closes every time it has received as many values as its size.
+	 *
+	 * @param values
+	 *            Number of new values after which the window closes. Zero for
+	 *            no limit.
+	 * @param millis
+	 *            Time in milliseconds after which the window closes. Zero for
+	 *            no limit.
+	 * @throws IllegalArgumentException
+	 *             If any of the limits is negative.
+	 */
+	public synchronized void setEmitEvery(int values, long millis) {
+		if (values < 0 || millis < 0) {
+			throw new IllegalArgumentException("Invalid limits " + values + " and " + millis);
+		}
+		this.hop = values;
+		this.period = millis;
+		if (task != null) {
+			SubscriberScheduler.cancel(task);
+			task = null;
+		}
+		if (millis > 0) {
+			task = SubscriberScheduler.schedule(new Runnable() {
+				public void run() {
+					flush();
+				}
+			}, millis);
+		}
+	}
+
+	/**
+	 * Close the windows that received values but did not close in time because
+	 * no more values arrived.
+	 */
+	private void flush() {
+		List<WindowStats> closed = new ArrayList<WindowStats>();
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			Iterator<Window> iter = windows.values().iterator();
+			while (iter.hasNext()) {
+				Window w = iter.next();
+				if (w.added == 0 || now - w.opened < period) {
+					continue;
+				}
+				if (span > 0) {
+					w.expire(now - span);
+				}
+				if (w.count > 0) {
+					closed.add(w.snapshot());
+				}
+				w.added = 0;
+				w.opened = now;
+			}
+		}
+		for (int i = 0; i < closed.size(); i++) {
+			try {
+				handleWindow(closed.get(i));
+			} catch (RuntimeException e) {
+				LogUtils.logError(owner, getClass(), "flush", new Object[] { "Handling the window failed" }, e);
+			}
+		}
+	}
+
+	/**
+	 * Set the thresholds of the mean of the windows. Every time the mean of a
+	 * window goes above the upper threshold, below the lower threshold, or
+	 * back in between, handleThreshold is called.
+	 *
+	 * @param lower
+	 *            The lower threshold.
+	 * @param upper
+	 *            The upper threshold.
+	 */
+	public synchronized void setThresholds(double lower, double upper) {
+		this.low = lower;
+		this.high = upper;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.universAAL.middleware.context.ContextSubscriber#handleContextEvent
+	 * (org.universAAL.middleware.context.ContextEvent)
+	 */
+	@Override
+	public void handleContextEvent(ContextEvent event) {
+		Object obj = event.getRDFObject();
+		if (!(obj instanceof Number)) {
+			return;
+		}
+		double value = ((Number) obj).doubleValue();
+		Long stamp = event.getTimestamp();
+		long time = stamp == null ? System.currentTimeMillis() : stamp.longValue();
+		String key = EventKey.of(event);
+		WindowStats closed = null;
+		WindowStats crossed = null;
+		int state = 0;
+		synchronized (this) {
+			if (windows == null) {
+				// Still being built: the limits of the windows are not set
+				return;
+			}
+			Window w = windows.get(key);
+			if (w == null) {
+				w = new Window(event.getSubjectURI(), event.getRDFPredicate(), size, time);
+				windows.put(key, w);
+			}
+			if (span > 0) {
+				w.expire(time - span);
+			}
+			w.add(value, time);
+			if ((hop > 0 && w.added >= hop) || (period > 0 && time - w.opened >= period)) {
+				closed = w.snapshot();
+				w.added = 0;
+				w.opened = time;
+			}
+			double mean = w.sum / w.count;
+			state = mean > high ? 1 : (mean < low ? -1 : 0);
+			if (state != w.state) {
+				w.state = state;
+				crossed = closed != null ? closed : w.snapshot();
+			}
+		}
+		if (closed != null) {
+			handleWindow(closed);
+		}
+		if (crossed != null) {
+			handleThreshold(crossed, state);
+		}
+	}
+
+	/**
+	 * When a window closes, this method is called and is passed its
+	 * statistics. Does nothing by default.
+	 *
+	 * @param stats
+	 *            The statistics of the values in the window.
+	 */
+	public void handleWindow(WindowStats stats) {
+		// Nothing by default
+	}
+
+	/**
+	 * When the mean of a window crosses a threshold, this method is called and
+	 * is passed its statistics. Does nothing by default.
+	 *
+	 * @param stats
+	 *            The statistics of the values in the window.
+	 * @param state
+	 *            1 if the mean went above the upper threshold, -1 if it went
+	 *            below the lower threshold, 0 if it went back in between.
+	 */
+	public void handleThreshold(WindowStats stats, int state) {
+		// Nothing by default
+	}
+
+	/**
+	 * Get the current statistics of the window of a subject and predicate.
+	 *
+	 * @param subjectURI
+	 *            URI of the subject.
+	 * @param predicate
+	 *            URI of the predicate.
+	 * @return The statistics, or null if no values were received for them.
+	 */
+	public synchronized WindowStats getStats(String subjectURI, String predicate) {
+		Window w = windows.get(EventKey.of(subjectURI, predicate));
+		return w == null ? null : w.snapshot();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.universAAL.middleware.context.ContextSubscriber#close()
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (task != null) {
+				SubscriberScheduler.cancel(task);
+				task = null;
+			}
+		}
+		super.close();
+	}
+
+	/**
+	 * Sliding window of values stored in a circular buffer of primitives, with
+	 * their running sum.
+	 */
+	private static final class Window {
+		/**
+		 * URI of the subject.
+		 */
+		private final String subjectURI;
+		/**
+		 * URI of the predicate.
+		 */
+		private final String predicate;
+		/**
+		 * The values.
+		 */
+		private final double[] values;
+		/**
+		 * Time in milliseconds of each value.
+		 */
+		private final long[] times;
+		/**
+		 * Position of the oldest value.
+		 */
+		private int start = 0;
+		/**
+		 * Number of values.
+		 */
+		private int count = 0;
+		/**
+		 * Sum of the values.
+		 */
+		private double sum = 0;
+		/**
+		 * Values added since the window last closed.
+		 */
+		private int added = 0;
+		/**
+		 * Time in milliseconds when the window last closed.
+		 */
+		private long opened;
+		/**
+		 * Position of the mean with respect to the thresholds.
+		 */
+		private int state = 0;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param subjectURI
+		 *            URI of the subject.
+		 * @param predicate
+		 *            URI of the predicate.
+		 * @param size
+		 *            Maximum number of values.
+		 * @param time
+		 *            Current time in milliseconds.
+		 */
+		private Window(String subjectURI, String predicate, int size, long time) {
+			this.subjectURI = subjectURI;
+			this.predicate = predicate;
+			this.values = new double[size];
+			this.times = new long[size];
+			this.opened = time;
+		}
+
+		/**
+		 * Add a value, removing the oldest if full.
+		 *
+		 * @param value
+		 *            The value.
+		 * @param time
+		 *            Time in milliseconds of the value.
+		 */
+		private void add(double value, long time) {
+			if (count == values.length) {
+				removeOldest();
+			}
+			int pos = (start + count) % values.length;
+			values[pos] = value;
+			times[pos] = time;
+			count++;
+			sum += value;
+			added++;
+		}
+
+		/**
+		 * Remove the values older than the limit.
+		 *
+		 * @param limit
+		 *            Time in milliseconds of the oldest value to keep.
+		 */
+		private void expire(long limit) {
+			while (count > 0 && times[start] < limit) {
+				removeOldest();
+			}
+		}
+
+		/**
+		 * Remove the oldest value.
+		 */
+		private void removeOldest() {
+			sum -= values[start];
+			start = (start + 1) % values.length;
+			count--;
+		}
+
+		/**
+		 * Take the statistics of the current values.
+		 *
+		 * @return The statistics.
+		 */
+		private WindowStats snapshot() {
+			double[] copy = new double[count];
+			double total = 0;
+			for (int i = 0; i < count; i++) {
+				copy[i] = values[(start + i) % values.length];
+				total += copy[i];
+			}
+			// Recompute the running sum to shed accumulated rounding errors
+			sum = total;
+			Arrays.sort(copy);
+			return new WindowStats(subjectURI, predicate, copy, total);
+		}
+	}
+
+}
@@ -0,0 +1,333 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api.context.mid;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+import org.universAAL.middleware.container.ModuleContext;
+import org.universAAL.middleware.container.utils.LogUtils;
+import org.universAAL.middleware.context.ContextEvent;
+import org.universAAL.middleware.owl.ManagedIndividual;
+import org.universAAL.utilities.api.context.EventKey;
+
+/**
+ * This abstract class can be extended to create a simple Context Subscriber
+ * that only cares about the latest state of things. Like UtilSubscriber, it
+ * allows specifying everything it needs in its constructor, but received
+ * events are not handled straight away: they are kept until the next delivery,
+ * which happens at most once per the given interval. If several events about
+ * the same subject and predicate arrive in between, only the newest one is
+ * kept. Your class that extends this will receive the latest events in the
+ * handleLatestEvent method. Deliveries of all the coalescing subscribers are
+ * run by a few shared threads, so handleLatestEvent should return quickly.
+ * <p/>
+ * Example: A subscriber that gets the status of Motion Sensors at most once
+ * per second for each sensor.
+ * <code>
+ * <p/>subscriber = new SubscriberExample(context, MotionSensor.MY_URI,
+ * <p/>		MotionSensor.PROP_HAS_VALUE, null, 1000);
+ * </code>
+ * <p/>
+ *
+ * @author alfiva
+ *
+ */
+public abstract class UtilCoalescingSubscriber extends UtilSubscriber {
+
+	/**
+	 * The newest undelivered event of each subject and predicate, in order of
+	 * first arrival. Null until the first event, which may arrive while the
+	 * superclass is still registering the subscriber.
+	 */
+	private LinkedHashMap<String, ContextEvent> pending;
+
+	/**
+	 * The universAAL module context, for logging.
+	 */
+	private ModuleContext owner;
+
+	/**
+	 * The periodic task that delivers the pending events.
+	 */
+	private ScheduledFuture<?> task;
+
+	/**
+	 * Number of received events.
+	 */
+	private long received;
+
+	/**
+	 * Number of delivered events.
+	 */
+	private long delivered;
+
+	/**
+	 * Create a Context Subscriber that will listen to the events matching what
+	 * is specified in the constructor, and deliver the latest ones.
+	 *
+	 * @param context
+	 *            The universAAL module context.
+	 * @param subjTypeURI
+	 *            The type URI that the provided events subject must have. Null
+	 *            for any.
+	 * @param predicate
+	 *            The exact predicate that the provided events must equal. Null
+	 *            for any.
+	 * @param objTypeURI
+	 *            The type URI that the provided events object must have. Null
+	 *            for any.
+	 * @param interval
+	 *            Minimum time in milliseconds between deliveries. Must be
+	 *            greater than zero.
+	 * @throws IllegalArgumentException
+	 *             If the interval is not greater than zero.
+	 */
+	protected UtilCoalescingSubscriber(ModuleContext context, String subjTypeURI, String predicate,
+			String objTypeURI, long interval) {
+		super(checked(context, interval), subjTypeURI, predicate, objTypeURI);
+		start(context, interval);
+	}
+
+	/**
+	 * Create a Context Subscriber that will listen to the events matching what
+	 * is specified in the constructor, and deliver the latest ones.
+	 *
+	 * @param context
+	 *            The universAAL module context.
+	 * @param subj
+	 *            The exact instance that the provided events subject must
+	 *            equal. Null for any.
+	 * @param predicate
+	 *            The exact predicate that the provided events must equal. Null
+	 *            for any.
+	 * @param objTypeURI
+	 *            The type URI that the provided events object must have. Null
+	 *            for any.
+	 * @param interval
+	 *            Minimum time in milliseconds between deliveries. Must be
+	 *            greater than zero.
+	 * @throws IllegalArgumentException
+	 *             If the interval is not greater than zero.
+	 */
+	protected UtilCoalescingSubscriber(ModuleContext context, ManagedIndividual subj, String predicate,
+			String objTypeURI, long interval) {
+		super(checked(context, interval), subj, predicate, objTypeURI);
+		start(context, interval);
+	}
+
+	/**
+	 * Create a Context Subscriber that will listen to the events matching what
+	 * is specified in the constructor, and deliver the latest ones.
+	 *
+	 * @param context
+	 *            The universAAL module context.
+	 * @param subj
+	 *            The exact instance that the event subject must equal. Null for
+	 *            any.
+	 * @param predicate
+	 *            The exact predicate that the event must equal. Null for any.
+	 * @param obj
+	 *            The exact instance that the event object must equal. Null for
+	 *            any.
+	 * @param interval
+	 *            Minimum time in milliseconds between deliveries. Must be
+	 *            greater than zero.
+	 * @throws IllegalArgumentException
+	 *             If the interval is not greater than zero.
+	 */
+	protected UtilCoalescingSubscriber(ModuleContext context, ManagedIndividual subj, String predicate, Object obj,
+			long interval) {
+		super(checked(context, interval), subj, predicate, obj);
+		start(context, interval);
+	}
+
+	/**
+	 * Create a Context Subscriber that will listen to the events matching what
+	 * is specified in the constructor, and deliver the latest ones.
+	 *
+	 * @param context
+	 *            The universAAL module context.
+	 * @param subjTypeURI
+	 *            The type URI that the event subject must have. Null for any.
+	 * @param predicate
+	 *            The exact predicate that the event must equal. Null for any.
+	 * @param obj
+	 *            The exact instance that the event object must equal. Null for
+	 *            any.
+	 * @param interval
+	 *            Minimum time in milliseconds between deliveries. Must be
+	 *            greater than zero.
+	 * @throws IllegalArgumentException
+	 *             If the interval is not greater than zero.
+	 */
+	protected UtilCoalescingSubscriber(ModuleContext context, String subjTypeURI, String predicate, Object obj,
+			long interval) {
+		super(checked(context, interval), subjTypeURI, predicate, obj);
+		start(context, interval);
+	}
+
+	/**
+	 * Schedule the delivery of the pending events.
+	 *
+	 * @param context
+	 *            The universAAL module context.
+	 * @param interval
+	 *            Minimum time in milliseconds between deliveries.
+	 */
+	private void start(ModuleContext context, long interval) {
+		owner = context;
+		ScheduledFuture<?> scheduled = SubscriberScheduler.schedule(new Runnable() {
+			public void run() {
+				deliver();
+			}
+		}, interval);
+		synchronized (this) {
+			task = scheduled;
+		}
+	}
+
+	/**
+	 * Validate the delivery interval before the subscriber is registered.
+	 *
+	 * @param context
+	 *            The universAAL module context.
+	 * @param interval
+	 *            Minimum time in milliseconds between deliveries.
+	 * @return The same context.
+	 */
+	private static ModuleContext checked(ModuleContext context, long interval) {
+		if (interval <= 0) {
+			throw new IllegalArgumentException("The delivery interval must be greater than zero: " + interval);
+		}
+		return context;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.universAAL.middleware.context.ContextSubscriber#handleContextEvent
+	 * (org.universAAL.middleware.context.ContextEvent)
+	 */
+	@Override
+	public void handleContextEvent(ContextEvent event) {
+		String key = EventKey.of(event);
+		synchronized (this) {
+			if (pending == null) {
+				pending = new LinkedHashMap<String, ContextEvent>();
+			}
+			received++;
+			ContextEvent previous = pending.get(key);
+			// Events may arrive out of order: keep the newest
+			if (previous == null || isNewer(event, previous)) {
+				pending.put(key, event);
+			}
+		}
+	}
+
+	/**
+	 * Pass all the pending events to handleLatestEvent.
+	 */
+	private void deliver() {
+		LinkedHashMap<String, ContextEvent> batch;
+		synchronized (this) {
+			if (pending == null || pending.isEmpty()) {
+				return;
+			}
+			batch = pending;
+			pending = new LinkedHashMap<String, ContextEvent>();
+			delivered += batch.size();
+		}
+		Iterator<ContextEvent> iter = batch.values().iterator();
+		while (iter.hasNext()) {
+			try {
+				handleLatestEvent(iter.next());
+			} catch (RuntimeException e) {
+				LogUtils.logError(owner, getClass(), "deliver", new Object[] { "Handling the latest event failed" }, e);
+			}
+		}
+	}
+
+	/**
+	 * Tell if an event is newer than another, by their timestamps.
+	 *
+	 * @param event
+	 *            An event.
+	 * @param other
+	 *            Another event about the same subject and predicate.
+	 * @return <code>false</code> only if the event is known to be older.
+	 */
+	private static boolean isNewer(ContextEvent event, ContextEvent other) {
+		Long t1 = event.getTimestamp();
+		Long t2 = other.getTimestamp();
+		return t1 == null || t2 == null || t1.longValue() >= t2.longValue();
+	}
+
+	/**
+	 * When the time to deliver comes, this method is called once for each
+	 * subject and predicate that received events since the previous delivery,
+	 * and is passed the newest of them.
+	 *
+	 * @param event
+	 *            The latest received Context Event about a subject and
+	 *            predicate.
+	 */
+	public abstract void handleLatestEvent(ContextEvent event);
+
+	/**
+	 * Get the number of events received by this subscriber.
+	 *
+	 * @return Number of received events.
+	 */
+	public synchronized long getReceived() {
+		return received;
+	}
+
+	/**
+	 * Get the number of events passed to handleLatestEvent. The difference
+	 * with the received ones is the number of coalesced events.
+	 *
+	 * @return Number of delivered events.
+	 */
+	public synchronized long getDelivered() {
+		return delivered;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.universAAL.middleware.context.ContextSubscriber#close()
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (task != null) {
+				SubscriberScheduler.cancel(task);
+				task = null;
+			}
+		}
+		super.close();
+	}
+
+}
@@ -0,0 +1,312 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api.context.mid;
+
+import java.util.HashMap;
+
+import org.universAAL.middleware.container.ModuleContext;
+import org.universAAL.middleware.context.ContextEvent;
+import org.universAAL.middleware.context.ContextEventPattern;
+import org.universAAL.middleware.context.owl.ContextProviderType;
+import org.universAAL.middleware.owl.ManagedIndividual;
+import org.universAAL.utilities.api.context.EventKey;
+
+/**
+ * A UtilPublisher that does not publish events that carry no news. It
+ * remembers the last published object of each subject and predicate, and
+ * suppresses events that repeat it. For numeric objects, changes within a
+ * deadband (absolute, relative to the last published value, or both) are
+ * also suppressed. To let subscribers know the provider is still alive, an
+ * event is always published if the last one about its subject and predicate
+ * was published longer ago than the maximum silence time, if set.
+ * <p/>
+ * Example: A publisher of temperatures that only publishes changes of at least
+ * half a degree, but at least once every 10 minutes.
+ * <code>
+ * <p/>publisher = new UtilFilteringPublisher(context, DEVICE_INSTANCE_URI,
+ * <p/>		ContextProviderType.gauge);
+ * <p/>publisher.setDeadband(0.5, 0);
+ * <p/>publisher.setMaxSilence(600000);
+ * </code>
+ * <p/>
+ *
+ * @author alfiva
+ *
+ */
+public class UtilFilteringPublisher extends UtilPublisher {
+
+	/**
+	 * Last published object and time of each subject and predicate.
+	 */
+	private HashMap<String, Published> last = new HashMap<String, Published>();
+	/**
+	 * Absolute deadband for numeric objects.
+	 */
+	private double absolute = 0;
+	/**
+	 * Deadband for numeric objects, relative to the last published value.
+	 */
+	private double relative = 0;
+	/**
+	 * Maximum time in milliseconds without publishing about a subject and
+	 * predicate. Zero for no limit.
+	 */
+	private long maxSilence = 0;
+	/**
+	 * Number of published events.
+	 */
+	private long published = 0;
+	/**
+	 * Number of suppressed events.
+	 */
+	private long suppressed = 0;
+
+	/**
+	 * Create a filtering <b>gauge</b> Context Publisher which provided events
+	 * can be of any type and is identified with the given URI.
+	 *
+	 * @param context
+	 *            The universAAL module context.
+	 * @param uri
+	 *            The URI that identifies the Context Provider.
+	 */
+	public UtilFilteringPublisher(ModuleContext context, String uri) {
+		super(context, uri);
+	}
+
+	/**
+	 * Create a filtering Context Publisher of the given type which provided
+	 * events can be of any type and is identified with the given URI.
+	 *
+	 * @param context
+	 *            The universAAL module context.
+	 * @param uri
+	 *            The URI that identifies the Context Provider.
+	 * @param type
+	 *            The type of Context Provider, one of Gauge, Controller or
+	 *            Reasoner.
+	 */
+	public UtilFilteringPublisher(ModuleContext context, String uri, ContextProviderType type) {
+		super(context, uri, type);
+	}
+
+	/**
+	 * Create a filtering Context Publisher of the given type which provided
+	 * events are described by a pattern and is identified with the given URI.
+	 *
+	 * @param context
+	 *            The universAAL module context.
+	 * @param uri
+	 *            The URI that identifies the Context Provider.
+	 * @param type
+	 *            The type of Context Provider, one of Gauge, Controller or
+	 *            Reasoner.
+	 * @param pattern
+	 *            Array of Patterns describing the provided events, as normally
+	 *            used in the native API.
+	 */
+	public UtilFilteringPublisher(ModuleContext context, String uri, ContextProviderType type,
+			ContextEventPattern[] pattern) {
+		super(context, uri, type, pattern);
+	}
+
+	/**
+	 * Create a filtering Context Publisher of the given type which provided
+	 * events are described by the arguments and is identified with the given
+	 * URI.
+	 *
+	 * @param context
+	 *            The universAAL module context.
+	 * @param uri
+	 *            The URI that identifies the Context Provider.
+	 * @param type
+	 *            The type of Context Provider, one of Gauge, Controller or
+	 *            Reasoner.
+	 * @param subjTypeURI
+	 *            The type URI that the provided events subject must have. Null
+	 *            for any.
+	 * @param predicate
+	 *            The exact predicate that the provided events must equal. Null
+	 *            for any.
+	 * @param objTypeURI
+	 *            The type URI that the provided events object must have. Null
+	 *            for any.
+	 */
+	public UtilFilteringPublisher(ModuleContext context, String uri, ContextProviderType type, String subjTypeURI,
+			String predicate, String objTypeURI) {
+		super(context, uri, type, subjTypeURI, predicate, objTypeURI);
+	}
+
+	/**
+	 * Create a filtering Context Publisher of the given type which provided
+	 * events are described by the arguments and is identified with the given
+	 * URI.
+	 *
+	 * @param context
+	 *            The universAAL module context.
+	 * @param uri
+	 *            The URI that identifies the Context Provider.
+	 * @param type
+	 *            The type of Context Provider, one of Gauge, Controller or
+	 *            Reasoner.
+	 * @param sub
+	 *            The exact instance that the provided events subject must
+	 *            equal. Null for any.
+	 * @param predicate
+	 *            The exact predicate that the provided events must equal. Null
+	 *            for any.
+	 * @param objTypeURI
+	 *            The type URI that the provided events object must have. Null
+	 *            for any.
+	 */
+	public UtilFilteringPublisher(ModuleContext context, String uri, ContextProviderType type, ManagedIndividual sub,
+			String predicate, String objTypeURI) {
+		super(context, uri, type, sub, predicate, objTypeURI);
+	}
+
+	/**
+	 * Set the deadband of numeric objects. A numeric object is suppressed if
+	 * its difference with the last published one is within any of the given
+	 * limits. Both are zero by default, which only suppresses equal values.
+	 *
+	 * @param absolute
+	 *            Maximum absolute difference to suppress.
+	 * @param relative
+	 *            Maximum difference to suppress, as a fraction of the last
+	 *            published value (e.g. 0.05 for 5%).
+	 */
+	public synchronized void setDeadband(double absolute, double relative) {
+		this.absolute = absolute;
+		this.relative = relative;
+	}
+
+	/**
+	 * Set the maximum time without publishing about a subject and predicate.
+	 * When it has passed, the next event about them is published even if it
+	 * would have been suppressed.
+	 *
+	 * @param millis
+	 *            Maximum silence in milliseconds. Zero, the default, for no
+	 *            limit.
+	 */
+	public synchronized void setMaxSilence(long millis) {
+		this.maxSilence = millis;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.universAAL.middleware.context.ContextPublisher#publish(org.universAAL
+	 * .middleware.context.ContextEvent)
+	 */
+	@Override
+	public void publish(ContextEvent e) {
+		String key = EventKey.of(e);
+		Object obj = e.getRDFObject();
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			Published prev = last.get(key);
+			if (prev != null && (maxSilence <= 0 || now - prev.time < maxSilence) && isSame(obj, prev.object)) {
+				suppressed++;
+				return;
+			}
+			last.put(key, new Published(obj, now));
+			published++;
+		}
+		super.publish(e);
+	}
+
+	/**
+	 * Tell if an object carries no news with respect to the last published.
+	 *
+	 * @param obj
+	 *            The object to publish.
+	 * @param prev
+	 *            The last published object.
+	 * @return <code>true</code> if it is equal, or within the deadband if
+	 *         numeric.
+	 */
+	private boolean isSame(Object obj, Object prev) {
+		if (obj instanceof Number && prev instanceof Number) {
+			double now = ((Number) obj).doubleValue();
+			double before = ((Number) prev).doubleValue();
+			double diff = Math.abs(now - before);
+			return diff == 0 || diff <= absolute || diff <= relative * Math.abs(before);
+		}
+		return obj == null ? prev == null : obj.equals(prev);
+	}
+
+	/**
+	 * Forget the last published objects, so that the next events are all
+	 * published.
+	 */
+	public synchronized void reset() {
+		last.clear();
+	}
+
+	/**
+	 * Get the number of events actually published.
+	 *
+	 * @return Number of published events.
+	 */
+	public synchronized long getPublished() {
+		return published;
+	}
+
+	/**
+	 * Get the number of events suppressed because they carried no news.
+	 *
+	 * @return Number of suppressed events.
+	 */
+	public synchronized long getSuppressed() {
+		return suppressed;
+	}
+
+	/**
+	 * Last published object about a subject and predicate.
+	 */
+	private static final class Published {
+		/**
+		 * The published object.
+		 */
+		private final Object object;
+		/**
+		 * Time in milliseconds when it was published.
+		 */
+		private final long time;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param object
+		 *            The published object.
+		 * @param time
+		 *            Time in milliseconds when it was published.
+		 */
+		private Published(Object object, long time) {
+			this.object = object;
+			this.time = time;
+		}
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api.context.mid;
+
+/**
+ * Immutable snapshot of the statistics of the numeric values in a window of a
+ * UtilAggregatingSubscriber, about a single subject and predicate.
+ *
+ * @author alfiva
+ *
+ */
+public class WindowStats {
+
+	/**
+	 * URI of the subject.
+	 */
+	private final String subjectURI;
+	/**
+	 * URI of the predicate.
+	 */
+	private final String predicate;
+	/**
+	 * The values in the window, sorted.
+	 */
+	private final double[] sorted;
+	/**
+	 * Sum of the values.
+	 */
+	private final double sum;
+
+	/**
+	 * Constructor. The values array is owned by the snapshot from now on.
+	 *
+	 * @param subjectURI
+	 *            URI of the subject.
+	 * @param predicate
+	 *            URI of the predicate.
+	 * @param sorted
+	 *            The values in the window, sorted.
+	 * @param sum
+	 *            Sum of the values.
+	 */
+	WindowStats(String subjectURI, String predicate, double[] sorted, double sum) {
+		this.subjectURI = subjectURI;
+		this.predicate = predicate;
+		this.sorted = sorted;
+		this.sum = sum;
+	}
+
+	/**
+	 * Get the subject of the aggregated events.
+	 *
+	 * @return URI of the subject.
+	 */
+	public String getSubjectURI() {
+		return subjectURI;
+	}
+
+	/**
+	 * Get the predicate of the aggregated events.
+	 *
+	 * @return URI of the predicate.
+	 */
+	public String getPredicate() {
+		return predicate;
+	}
+
+	/**
+	 * Get the number of values in the window.
+	 *
+	 * @return The count of values.
+	 */
+	public int getCount() {
+		return sorted.length;
+	}
+
+	/**
+	 * Get the sum of the values in the window.
+	 *
+	 * @return The sum.
+	 */
+	public double getSum() {
+		return sum;
+	}
+
+	/**
+	 * Get the minimum of the values in the window.
+	 *
+	 * @return The minimum, or NaN if empty.
+	 */
+	public double getMin() {
+		return sorted.length == 0 ? Double.NaN : sorted[0];
+	}
+
+	/**
+	 * Get the maximum of the values in the window.
+	 *
+	 * @return The maximum, or NaN if empty.
+	 */
+	public double getMax() {
+		return sorted.length == 0 ? Double.NaN : sorted[sorted.length - 1];
+	}
+
+	/**
+	 * Get the arithmetic mean of the values in the window.
+	 *
+	 * @return The mean, or NaN if empty.
+	 */
+	public double getMean() {
+		return sorted.length == 0 ? Double.NaN : sum / sorted.length;
+	}
+
+	/**
+	 * Get a percentile of the values in the window, using the nearest-rank
+	 * method.
+	 *
+	 * @param p
+	 *            The percentile, between 0 and 100 (e.g. 95).
+	 * @return The value at that percentile, or NaN if empty.
+	 */
+	public double getPercentile(double p) {
+		if (sorted.length == 0) {
+			return Double.NaN;
+		}
+		int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+		return sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))];
+	}
+
+}
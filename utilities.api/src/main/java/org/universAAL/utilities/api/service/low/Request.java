@@ -21,14 +21,18 @@
  */
 package org.universAAL.utilities.api.service.low;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 
 import org.universAAL.middleware.owl.MergedRestriction;
 import org.universAAL.middleware.service.CallStatus;
 import org.universAAL.middleware.service.ServiceRequest;
 import org.universAAL.middleware.service.ServiceResponse;
 import org.universAAL.middleware.service.owl.Service;
+import org.universAAL.middleware.service.owls.process.ProcessOutput;
 import org.universAAL.utilities.api.service.Add;
 import org.universAAL.utilities.api.service.Change;
 import org.universAAL.utilities.api.service.Output;
@@ -343,6 +347,80 @@ public class Request extends ServiceRequest {
 		return null;
 	}
 
+	/**
+	 * Use this helper method when you have called a ServiceRequest (or a
+	 * Request) with several outputs and you want all their values at once.
+	 * The outputs of the response are walked only once, and nothing is
+	 * printed if some output is missing.
+	 * <p/>
+	 *
+	 * @param sr
+	 *            The ServiceResponse returned by the .call method
+	 * @param outputURIs
+	 *            The URIs (the IDs) you used to refer to the outputs when
+	 *            building the request
+	 * @return A map with a list for each of the given URIs, containing all
+	 *         the values returned at that URI, empty if there were none.
+	 *         Returns <code>null</code> if the Service call failed.
+	 */
+	public static Map<String, List<Object>> recoverOutputs(ServiceResponse sr, String[] outputURIs) {
+		Map<String, List<Object>> holder = new HashMap<String, List<Object>>(outputURIs.length * 2);
+		for (int i = 0; i < outputURIs.length; i++) {
+			holder.put(outputURIs[i], new ArrayList<Object>(1));
+		}
+		return recoverOutputs(sr, holder) ? holder : null;
+	}
+
+	/**
+	 * Use this helper method when you have called a ServiceRequest (or a
+	 * Request) with several outputs and you want all their values at once,
+	 * placed in a map of your own. The outputs of the response are walked
+	 * only once, and nothing is printed if some output is missing.
+	 * <p/>
+	 *
+	 * @param sr
+	 *            The ServiceResponse returned by the .call method
+	 * @param holder
+	 *            A map whose keys are the URIs (the IDs) you used to refer to
+	 *            the outputs when building the request. The values returned
+	 *            at each URI are added to its list, which is created if null.
+	 *            Other outputs are ignored.
+	 * @return <code>true</code> if the Service call succeeded and the holder
+	 *         was filled, <code>false</code> if it failed.
+	 */
+	public static boolean recoverOutputs(ServiceResponse sr, Map<String, List<Object>> holder) {
+		if (sr.getCallStatus() != CallStatus.succeeded) {
+			return false;
+		}
+		List<?> outs = sr.getOutputs();
+		if (outs == null) {
+			return true;
+		}
+		for (int i = 0; i < outs.size(); i++) {
+			Object o = outs.get(i);
+			if (!(o instanceof ProcessOutput)) {
+				continue;
+			}
+			ProcessOutput out = (ProcessOutput) o;
+			String uri = out.getURI();
+			if (!holder.containsKey(uri)) {
+				continue;
+			}
+			List<Object> values = holder.get(uri);
+			if (values == null) {
+				values = new ArrayList<Object>(1);
+				holder.put(uri, values);
+			}
+			Object value = out.getParameterValue();
+			if (value instanceof List) {
+				values.addAll((List<?>) value);
+			} else if (value != null) {
+				values.add(value);
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * I have to put this because of all service refactoring stuff.
 	 *
@@ -0,0 +1,181 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api.service.low;
+
+import org.universAAL.middleware.owl.OntologyManagement;
+import org.universAAL.middleware.service.owl.Service;
+import org.universAAL.utilities.api.service.Add;
+import org.universAAL.utilities.api.service.Change;
+import org.universAAL.utilities.api.service.Output;
+import org.universAAL.utilities.api.service.Path;
+import org.universAAL.utilities.api.service.Remove;
+import org.universAAL.utilities.api.service.Typematch;
+import org.universAAL.utilities.api.service.Value;
+import org.universAAL.utilities.api.service.Variable;
+
+/**
+ * An immutable description of a Request that is sent many times, changing
+ * only some of its arguments (e.g. the device to act on). The property paths
+ * and the fixed arguments are given once, and the arguments that change are
+ * left as slots (null) to be filled in when creating each Request. Creating a
+ * Request from a template only instantiates the requested service and puts
+ * the already prepared arguments in it.
+ * <p/>
+ * Example: Turning off many lights, each with a different URI <code>
+ * <p/>RequestTemplate off=new RequestTemplate(Lighting.MY_URI,
+ * <p/>	new Path[]{Path.at(Lighting.PROP_CONTROLS), Path.at(Lighting.PROP_CONTROLS).to(LightSource.PROP_SOURCE_BRIGHTNESS)},
+ * <p/>	new Value[]{null, Arg.change(new Integer(0))});
+ * <p/>caller.call(off.create(Arg.in(new LightSource(desiredURI))));
+ * </code>
+ * <p/>
+ *
+ * @author alfiva
+ *
+ */
+public final class RequestTemplate {
+
+	/**
+	 * URI of the requested service class.
+	 */
+	private final String serviceURI;
+	/**
+	 * Property path of each argument.
+	 */
+	private final String[][] paths;
+	/**
+	 * Each fixed argument, or null for slots.
+	 */
+	private final Value[] args;
+	/**
+	 * Position in the arguments of each slot.
+	 */
+	private final int[] slots;
+
+	/**
+	 * Create a template of requests.
+	 *
+	 * @param serviceURI
+	 *            URI of the class of service to request, which must be
+	 *            registered in the ontologies.
+	 * @param branches
+	 *            The property path of each argument.
+	 * @param leaves
+	 *            The fixed arguments, with null for the arguments that will be
+	 *            given when creating each Request.
+	 */
+	public RequestTemplate(String serviceURI, Path[] branches, Value[] leaves) {
+		if (branches.length != leaves.length) {
+			throw new IllegalArgumentException("There must be one argument for each path");
+		}
+		this.serviceURI = serviceURI;
+		this.paths = new String[branches.length][];
+		this.args = new Value[leaves.length];
+		int count = 0;
+		for (int i = 0; i < leaves.length; i++) {
+			// Paths are mutable: keep a copy
+			paths[i] = branches[i].path.clone();
+			args[i] = leaves[i];
+			if (leaves[i] == null) {
+				count++;
+			}
+		}
+		this.slots = new int[count];
+		count = 0;
+		for (int i = 0; i < leaves.length; i++) {
+			if (leaves[i] == null) {
+				slots[count++] = i;
+			}
+		}
+	}
+
+	/**
+	 * Create a Request from the template with its only slot filled in.
+	 *
+	 * @param arg
+	 *            The argument of the slot.
+	 * @return The new Request.
+	 */
+	public Request create(Value arg) {
+		return create(new Value[] { arg });
+	}
+
+	/**
+	 * Create a Request from the template with its slots filled in.
+	 *
+	 * @param slotArgs
+	 *            The arguments of the slots, in the order they were given.
+	 * @return The new Request.
+	 */
+	public Request create(Value[] slotArgs) {
+		if (slotArgs.length != slots.length) {
+			throw new IllegalArgumentException("This template has " + slots.length + " slots");
+		}
+		Request req = new Request((Service) OntologyManagement.getInstance().getResource(serviceURI, null));
+		int next = 0;
+		for (int i = 0; i < args.length; i++) {
+			Value arg = args[i];
+			if (arg == null) {
+				arg = slotArgs[next++];
+			}
+			put(req, paths[i], arg);
+		}
+		return req;
+	}
+
+	/**
+	 * Get the number of arguments to give when creating a Request.
+	 *
+	 * @return The number of slots.
+	 */
+	public int getSlots() {
+		return slots.length;
+	}
+
+	/**
+	 * Put an argument in a Request, according to its kind.
+	 *
+	 * @param req
+	 *            The Request.
+	 * @param branch
+	 *            The property path of the argument.
+	 * @param leaf
+	 *            The argument.
+	 */
+	private static void put(Request req, String[] branch, Value leaf) {
+		if (leaf instanceof Variable) {
+			req.put(branch, (Variable) leaf);
+		} else if (leaf instanceof Output) {
+			req.put(branch, (Output) leaf);
+		} else if (leaf instanceof Change) {
+			req.put(branch, (Change) leaf);
+		} else if (leaf instanceof Typematch) {
+			req.put(branch, (Typematch) leaf);
+		} else if (leaf instanceof Add) {
+			req.put(branch, (Add) leaf);
+		} else if (leaf instanceof Remove) {
+			req.put(branch, (Remove) leaf);
+		} else {
+			throw new IllegalArgumentException("Unknown kind of argument: " + leaf);
+		}
+	}
+
+}
@@ -0,0 +1,145 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api.service.mid;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.universAAL.middleware.rdf.Resource;
+import org.universAAL.middleware.service.owls.profile.ServiceProfile;
+
+/**
+ * Bounded cache of the service profiles generated by UtilActuator, UtilSensor
+ * and UtilEditor, so that callees restarted with the same arguments do not
+ * validate and assemble them again. The cache keeps its own copies of the
+ * profiles and gives a deep copy of them on every hit, so callers can modify
+ * the profiles they get without affecting the cache or each other. Profiles
+ * that depend on a device instance are cached without it, by the class of the
+ * device, and the instance is added to each copy.
+ *
+ * @author alfiva
+ *
+ */
+final class ProfileCache {
+
+	/**
+	 * Maximum number of cached arrays of profiles.
+	 */
+	static final int MAX_ENTRIES = 128;
+
+	/**
+	 * The cached profiles by key, in access order.
+	 */
+	private static final LinkedHashMap<String, ServiceProfile[]> CACHE = new LinkedHashMap<String, ServiceProfile[]>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ServiceProfile[]> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	/**
+	 * Whether the profiles can be copied. If a copy does not keep the types of
+	 * the profiles, nothing is cached from then on.
+	 */
+	private static boolean enabled = true;
+
+	/**
+	 * Disallow instantiating.
+	 */
+	private ProfileCache() {
+	}
+
+	/**
+	 * Get a copy of the cached profiles of a key.
+	 *
+	 * @param key
+	 *            The key of the profiles.
+	 * @return A copy of the profiles, or null if not cached.
+	 */
+	static synchronized ServiceProfile[] get(String key) {
+		ServiceProfile[] profiles = CACHE.get(key);
+		return profiles == null ? null : copy(profiles);
+	}
+
+	/**
+	 * Cache a copy of the profiles of a key.
+	 *
+	 * @param key
+	 *            The key of the profiles.
+	 * @param profiles
+	 *            The generated profiles, which still belong to the caller.
+	 */
+	static synchronized void put(String key, ServiceProfile[] profiles) {
+		ServiceProfile[] copy = copy(profiles);
+		if (copy != null) {
+			CACHE.put(key, copy);
+		}
+	}
+
+	/**
+	 * Deep copy some profiles.
+	 *
+	 * @param profiles
+	 *            The profiles.
+	 * @return The copies, or null if they could not be copied.
+	 */
+	private static ServiceProfile[] copy(ServiceProfile[] profiles) {
+		if (!enabled) {
+			return null;
+		}
+		ServiceProfile[] copy = new ServiceProfile[profiles.length];
+		try {
+			for (int i = 0; i < profiles.length; i++) {
+				Resource r = profiles[i].deepCopy();
+				// The copy must still be usable to add restrictions
+				if (!(r instanceof ServiceProfile) || ((ServiceProfile) r).getTheService() == null) {
+					throw new ClassCastException();
+				}
+				copy[i] = (ServiceProfile) r;
+			}
+		} catch (ClassCastException e) {
+			enabled = false;
+			CACHE.clear();
+			return null;
+		}
+		return copy;
+	}
+
+	/**
+	 * Build the key of some profiles from the arguments used to generate them.
+	 *
+	 * @param parts
+	 *            The arguments.
+	 * @return The key.
+	 */
+	static String key(String[] parts) {
+		StringBuffer buf = new StringBuffer();
+		for (int i = 0; i < parts.length; i++) {
+			buf.append(parts[i]).append(' ');
+		}
+		return buf.toString();
+	}
+
+}
@@ -21,6 +21,9 @@
  */
 package org.universAAL.utilities.api.service.mid;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.universAAL.middleware.owl.MergedRestriction;
 import org.universAAL.middleware.owl.OntologyManagement;
 import org.universAAL.middleware.rdf.PropertyPath;
@@ -35,8 +38,10 @@ import org.universAAL.ontology.phThing.DeviceService;
 import org.universAAL.utilities.api.service.Arg;
 import org.universAAL.utilities.api.service.Output;
 import org.universAAL.utilities.api.service.Path;
+import org.universAAL.utilities.api.service.Value;
 import org.universAAL.utilities.api.service.Variable;
 import org.universAAL.utilities.api.service.low.Request;
+import org.universAAL.utilities.api.service.low.RequestTemplate;
 
 /**
  * This is a helper class for those who want to use the typical services of an
@@ -71,6 +76,18 @@ public class UtilActuator {
 	 * Argument suffix.
 	 */
 	public static final String IN_DEVICE = "inputActuatorAll";
+	/**
+	 * Service suffix.
+	 */
+	public static final String SERVICE_TURN_OFF_ALL = "servActuatorAllOff";
+	/**
+	 * Service suffix.
+	 */
+	public static final String SERVICE_TURN_ON_ALL = "servActuatorAllOn";
+	/**
+	 * Argument suffix.
+	 */
+	public static final String IN_DEVICES = "inputActuatorList";
 
 	/**
 	 * Gives you the 3 typical service profiles of an on/off actuator service:
@@ -105,29 +122,45 @@ public class UtilActuator {
 	 */
 	public static ServiceProfile[] getServiceProfiles(String namespace, String ontologyURI, Actuator actuator)
 			throws InvalidOntologyUtilException {
+		// Cached by class, the instance is restricted on each copy
+		String key = ProfileCache.key(new String[] { "Actuator", namespace, ontologyURI, actuator.getClassURI() });
+		ServiceProfile[] profiles = ProfileCache.get(key);
+		if (profiles == null) {
+			checkOnOff(actuator);
+			profiles = buildServiceProfiles(namespace, ontologyURI, actuator.getClassURI());
+			ProfileCache.put(key, profiles);
+		}
 
-		try {
-			if (actuator.getOntClassInfo().getRestrictionsOnProp(Actuator.PROP_HAS_VALUE).getPropTypeURI()
-					.equals(StatusValue.MY_URI)) {
-				throw new InvalidOntologyUtilException("The Actuator ontology passed as parameter "
-						+ "is not an on/off Actuator: its HAS_VALUE" + " property must be of type StatusValue");
-			}
-		} catch (NullPointerException e) {
-			throw new InvalidOntologyUtilException("The Actuator ontology passed as parameter"
-					+ " misses some restriction on its HAS_VALUE" + " property. It must be of type StatusValue");
+		MergedRestriction r = MergedRestriction.getFixedValueRestriction(DeviceService.PROP_CONTROLS, actuator);
+		for (int i = 0; i < profiles.length; i++) {
+			profiles[i].getTheService().addInstanceLevelRestriction(r, new String[] { DeviceService.PROP_CONTROLS });
 		}
 
+		return profiles;
+	}
+
+	/**
+	 * Build the 3 typical service profiles of an on/off actuator service,
+	 * without restricting them to an actuator instance.
+	 *
+	 * @param namespace
+	 *            The namespace of your server.
+	 * @param ontologyURI
+	 *            The MY_URI of the class of DeviceService ontology.
+	 * @param actuatorURI
+	 *            The MY_URI of the class of the actuator.
+	 * @return An array with the 3 typical service profiles
+	 */
+	private static ServiceProfile[] buildServiceProfiles(String namespace, String ontologyURI, String actuatorURI) {
 		ServiceProfile[] profiles = new ServiceProfile[3];
 
 		PropertyPath ppath = new PropertyPath(null, true,
 				new String[] { DeviceService.PROP_CONTROLS, Actuator.PROP_HAS_VALUE });
 
 		ProcessInput input = new ProcessInput(namespace + IN_DEVICE);
-		input.setParameterType(actuator.getClassURI());
+		input.setParameterType(actuatorURI);
 		input.setCardinality(1, 0);
 
-		MergedRestriction r = MergedRestriction.getFixedValueRestriction(DeviceService.PROP_CONTROLS, actuator);
-
 		Service getOnOff = (Service) OntologyManagement.getInstance().getResource(ontologyURI,
 				namespace + SERVICE_GET_ON_OFF);
 		profiles[0] = getOnOff.getProfile();
@@ -136,25 +169,116 @@ public class UtilActuator {
 		profiles[0].addOutput(output);
 		profiles[0].addSimpleOutputBinding(output, ppath.getThePath());
 		profiles[0].addInput(input);
-		profiles[0].getTheService().addInstanceLevelRestriction(r, new String[] { DeviceService.PROP_CONTROLS });
 
 		Service turnOff = (Service) OntologyManagement.getInstance().getResource(ontologyURI,
 				namespace + SERVICE_TURN_OFF);
 		profiles[1] = turnOff.getProfile();
 		profiles[1].addChangeEffect(ppath.getThePath(), StatusValue.NotActivated);
 		profiles[1].addInput(input);
-		profiles[1].getTheService().addInstanceLevelRestriction(r, new String[] { DeviceService.PROP_CONTROLS });
 
 		Service turnOn = (Service) OntologyManagement.getInstance().getResource(ontologyURI,
 				namespace + SERVICE_TURN_ON);
 		profiles[2] = turnOn.getProfile();
 		profiles[2].addChangeEffect(ppath.getThePath(), StatusValue.Activated);
 		profiles[2].addInput(input);
-		profiles[2].getTheService().addInstanceLevelRestriction(r, new String[] { DeviceService.PROP_CONTROLS });
 
 		return profiles;
 	}
 
+	/**
+	 * Gives you the 2 batch service profiles of an on/off actuator service:
+	 * Set On All and Set Off All, which take a list of actuators as input
+	 * instead of a single one, so that many actuators can be switched with a
+	 * single request. Any callee with these profiles matches all the batch
+	 * requests for actuators of its class, whatever actuators are in the
+	 * list, so they are meant for a single gateway callee per class of
+	 * actuators that can switch all of them (e.g. the driver of a bus of
+	 * lights). Registering them in a callee per actuator would deliver each
+	 * batch request to all those callees. When handling requests in
+	 * your Callee, you can use the references to services and arguments URIs
+	 * prepending <code>namespace</code> to UtilActuator constants.
+	 * <p>
+	 * BE CAREFUL: This will only work with actuators that have StatusValue as
+	 * HAS_VALUE property. Others, like DimmerActuator, will throw an exception.
+	 *
+	 * @param namespace
+	 *            The namespace of your server, ending with the character #. You
+	 *            can optionally add some prefix after the # if you use
+	 *            UtilActuator more than once in the same Callee.
+	 * @param ontologyURI
+	 *            The MY_URI of the class of DeviceService ontology you are
+	 *            going to implement. It MUST be a subclass of DeviceService.
+	 * @param actuator
+	 *            An ontology instance of the class of actuators you are
+	 *            controlling.
+	 * @return An array with the 2 batch service profiles
+	 * @throws InvalidOntologyUtilException
+	 *             when an actuator is passed that is does not have StatusValue
+	 *             as type restriction of its HAS_VALUE property.
+	 */
+	public static ServiceProfile[] getBatchServiceProfiles(String namespace, String ontologyURI, Actuator actuator)
+			throws InvalidOntologyUtilException {
+		String key = ProfileCache
+				.key(new String[] { "ActuatorBatch", namespace, ontologyURI, actuator.getClassURI() });
+		ServiceProfile[] profiles = ProfileCache.get(key);
+		if (profiles != null) {
+			return profiles;
+		}
+
+		checkOnOff(actuator);
+
+		profiles = new ServiceProfile[2];
+
+		PropertyPath ppath = new PropertyPath(null, true,
+				new String[] { DeviceService.PROP_CONTROLS, Actuator.PROP_HAS_VALUE });
+
+		ProcessInput input = new ProcessInput(namespace + IN_DEVICES);
+		input.setParameterType(actuator.getClassURI());
+		input.setCardinality(-1, 1);
+
+		MergedRestriction r = MergedRestriction.getFixedValueRestriction(DeviceService.PROP_CONTROLS,
+				input.asVariableReference());
+
+		Service turnOff = (Service) OntologyManagement.getInstance().getResource(ontologyURI,
+				namespace + SERVICE_TURN_OFF_ALL);
+		profiles[0] = turnOff.getProfile();
+		profiles[0].addChangeEffect(ppath.getThePath(), StatusValue.NotActivated);
+		profiles[0].addInput(input);
+		profiles[0].getTheService().addInstanceLevelRestriction(r, new String[] { DeviceService.PROP_CONTROLS });
+
+		Service turnOn = (Service) OntologyManagement.getInstance().getResource(ontologyURI,
+				namespace + SERVICE_TURN_ON_ALL);
+		profiles[1] = turnOn.getProfile();
+		profiles[1].addChangeEffect(ppath.getThePath(), StatusValue.Activated);
+		profiles[1].addInput(input);
+		profiles[1].getTheService().addInstanceLevelRestriction(r, new String[] { DeviceService.PROP_CONTROLS });
+
+		ProfileCache.put(key, profiles);
+		return profiles;
+	}
+
+	/**
+	 * Check that an actuator is of the on/off kind.
+	 *
+	 * @param actuator
+	 *            The ontology instance of the actuator.
+	 * @throws InvalidOntologyUtilException
+	 *             when an actuator is passed that is does not have StatusValue
+	 *             as type restriction of its HAS_VALUE property.
+	 */
+	private static void checkOnOff(Actuator actuator) throws InvalidOntologyUtilException {
+		try {
+			if (actuator.getOntClassInfo().getRestrictionsOnProp(Actuator.PROP_HAS_VALUE).getPropTypeURI()
+					.equals(StatusValue.MY_URI)) {
+				throw new InvalidOntologyUtilException("The Actuator ontology passed as parameter "
+						+ "is not an on/off Actuator: its HAS_VALUE" + " property must be of type StatusValue");
+			}
+		} catch (NullPointerException e) {
+			throw new InvalidOntologyUtilException("The Actuator ontology passed as parameter"
+					+ " misses some restriction on its HAS_VALUE" + " property. It must be of type StatusValue");
+		}
+	}
+
 	/**
 	 * Gives you the 3 typical service profiles of an on/off actuator service:
 	 * Get status, Set On, and Set Off. When handling requests in your Callee,
@@ -341,4 +465,140 @@ public class UtilActuator {
 		return requestSetOff(DeviceService.MY_URI, actuator);
 	}
 
+	/**
+	 * Gives you the batch SET ON service request for actuator services, which
+	 * turns on all the given actuators with a single request. If the actuator
+	 * services also used UtilActuator batch profiles the match is guaranteed.
+	 *
+	 * @param ontologyURI
+	 *            The MY_URI of the class of Service ontology you want to call
+	 * @param actuators
+	 *            The actuators to turn on.
+	 * @return The ServiceRequest that will call the matching SET ON ALL
+	 *         service of the actuators
+	 */
+	public static ServiceRequest requestSetOnAll(String ontologyURI, Actuator[] actuators) {
+		return requestSetAll(ontologyURI, actuators, StatusValue.Activated);
+	}
+
+	/**
+	 * Gives you the batch SET ON service request for actuator services, which
+	 * turns on all the given actuators with a single request. The service is
+	 * treated as the default DeviceService.
+	 *
+	 * @param actuators
+	 *            The actuators to turn on.
+	 * @return The ServiceRequest that will call the matching SET ON ALL
+	 *         service of the actuators
+	 */
+	public static ServiceRequest requestSetOnAll(Actuator[] actuators) {
+		return requestSetOnAll(DeviceService.MY_URI, actuators);
+	}
+
+	/**
+	 * Gives you the batch SET OFF service request for actuator services, which
+	 * turns off all the given actuators with a single request. If the actuator
+	 * services also used UtilActuator batch profiles the match is guaranteed.
+	 *
+	 * @param ontologyURI
+	 *            The MY_URI of the class of Service ontology you want to call
+	 * @param actuators
+	 *            The actuators to turn off.
+	 * @return The ServiceRequest that will call the matching SET OFF ALL
+	 *         service of the actuators
+	 */
+	public static ServiceRequest requestSetOffAll(String ontologyURI, Actuator[] actuators) {
+		return requestSetAll(ontologyURI, actuators, StatusValue.NotActivated);
+	}
+
+	/**
+	 * Gives you the batch SET OFF service request for actuator services, which
+	 * turns off all the given actuators with a single request. The service is
+	 * treated as the default DeviceService.
+	 *
+	 * @param actuators
+	 *            The actuators to turn off.
+	 * @return The ServiceRequest that will call the matching SET OFF ALL
+	 *         service of the actuators
+	 */
+	public static ServiceRequest requestSetOffAll(Actuator[] actuators) {
+		return requestSetOffAll(DeviceService.MY_URI, actuators);
+	}
+
+	/**
+	 * Build a batch request that sets the status of many actuators.
+	 *
+	 * @param ontologyURI
+	 *            The MY_URI of the class of Service ontology you want to call
+	 * @param actuators
+	 *            The actuators.
+	 * @param status
+	 *            The status to set.
+	 * @return The ServiceRequest.
+	 */
+	private static ServiceRequest requestSetAll(String ontologyURI, Actuator[] actuators, StatusValue status) {
+		Request req = new Request((Service) OntologyManagement.getInstance().getResource(ontologyURI, null));
+		List<Actuator> list = new ArrayList<Actuator>(actuators.length);
+		for (int i = 0; i < actuators.length; i++) {
+			list.add(actuators[i]);
+		}
+		req.addValueFilter(new String[] { DeviceService.PROP_CONTROLS }, list);
+		req.put(Path.at(DeviceService.PROP_CONTROLS).to(Actuator.PROP_HAS_VALUE), Arg.change(status));
+		return req;
+	}
+
+	/**
+	 * Gives you a template of the typical GET STATUS service request for
+	 * actuator services, to create many requests that only differ in the
+	 * actuator. Create each request with <code>create(Arg.in(actuator))</code>.
+	 *
+	 * @param ontologyURI
+	 *            The MY_URI of the class of Service ontology you want to call
+	 * @param out
+	 *            The returned value of the actuator GET service will be placed
+	 *            in this URI. Look for it there in the response.
+	 * @return The template of requests that will call the matching GET STATUS
+	 *         service of an actuator
+	 */
+	public static RequestTemplate templateGetOnOff(String ontologyURI, String out) {
+		return new RequestTemplate(ontologyURI,
+				new Path[] { Path.at(DeviceService.PROP_CONTROLS),
+						Path.at(DeviceService.PROP_CONTROLS).to(Actuator.PROP_HAS_VALUE) },
+				new Value[] { null, Arg.out(out) });
+	}
+
+	/**
+	 * Gives you a template of the typical SET ON service request for actuator
+	 * services, to create many requests that only differ in the actuator.
+	 * Create each request with <code>create(Arg.in(actuator))</code>.
+	 *
+	 * @param ontologyURI
+	 *            The MY_URI of the class of Service ontology you want to call
+	 * @return The template of requests that will call the matching SET ON
+	 *         service of an actuator
+	 */
+	public static RequestTemplate templateSetOn(String ontologyURI) {
+		return new RequestTemplate(ontologyURI,
+				new Path[] { Path.at(DeviceService.PROP_CONTROLS),
+						Path.at(DeviceService.PROP_CONTROLS).to(Actuator.PROP_HAS_VALUE) },
+				new Value[] { null, Arg.change(StatusValue.Activated) });
+	}
+
+	/**
+	 * Gives you a template of the typical SET OFF service request for actuator
+	 * services, to create many requests that only differ in the actuator.
+	 * Create each request with <code>create(Arg.in(actuator))</code>.
+	 *
+	 * @param ontologyURI
+	 *            The MY_URI of the class of Service ontology you want to call
+	 * @return The template of requests that will call the matching SET OFF
+	 *         service of an actuator
+	 */
+	public static RequestTemplate templateSetOff(String ontologyURI) {
+		return new RequestTemplate(ontologyURI,
+				new Path[] { Path.at(DeviceService.PROP_CONTROLS),
+						Path.at(DeviceService.PROP_CONTROLS).to(Actuator.PROP_HAS_VALUE) },
+				new Value[] { null, Arg.change(StatusValue.NotActivated) });
+	}
+
 }
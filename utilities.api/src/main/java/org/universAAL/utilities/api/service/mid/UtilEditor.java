@@ -32,10 +32,13 @@ import org.universAAL.utilities.api.service.Add;
 import org.universAAL.utilities.api.service.Arg;
 import org.universAAL.utilities.api.service.Change;
 import org.universAAL.utilities.api.service.Output;
+import org.universAAL.utilities.api.service.Path;
 import org.universAAL.utilities.api.service.Remove;
+import org.universAAL.utilities.api.service.Value;
 import org.universAAL.utilities.api.service.Variable;
 import org.universAAL.utilities.api.service.low.Profile;
 import org.universAAL.utilities.api.service.low.Request;
+import org.universAAL.utilities.api.service.low.RequestTemplate;
 
 /**
  * This is a helper class for those who want to use the typical services of an
@@ -119,8 +122,14 @@ public class UtilEditor {
 	 */
 	public static ServiceProfile[] getServiceProfiles(String namespace, String ontologyURI, String[] path,
 			String editedURI) {
+		String key = ProfileCache
+				.key(new String[] { "Editor", namespace, ontologyURI, editedURI, ProfileCache.key(path) });
+		ServiceProfile[] profiles = ProfileCache.get(key);
+		if (profiles != null) {
+			return profiles;
+		}
 
-		ServiceProfile[] profiles = new ServiceProfile[4];
+		profiles = new ServiceProfile[4];
 		// This, and the usage of Arg.s do not work when editedURI are of
 		// abstract ont classes. Because they cannot be instantiated.
 		// Resource argument = OntologyManagement.getInstance().getResource(
@@ -180,6 +189,7 @@ public class UtilEditor {
 		prof4.service.getProfile().addRemoveEffect(path);
 		profiles[3] = prof4.getTheProfile();
 
+		ProfileCache.put(key, profiles);
 		return profiles;
 	}
 
@@ -368,4 +378,44 @@ public class UtilEditor {
 		return req;
 	}
 
+	/**
+	 * Gives you a template of the typical GET service request for editor
+	 * services, to create many requests that only differ in the input. Create
+	 * each request with <code>create(Arg.in(in))</code>.
+	 *
+	 * @param ontologyURI
+	 *            The MY_URI of the class of Service ontology you want to call
+	 * @param path
+	 *            The property path from the root of the Service ontology
+	 *            concept to the exact concept you want to manage
+	 * @param out
+	 *            The returned value of the editor GET service will be placed in
+	 *            this URI. Look for it there in the response.
+	 * @return The template of requests that will call the matching GET service
+	 *         of an editor
+	 */
+	public static RequestTemplate templateGet(String ontologyURI, String[] path, String out) {
+		return new RequestTemplate(ontologyURI, new Path[] { Path.parse(path), Path.parse(path) },
+				new Value[] { null, Arg.out(out) });
+	}
+
+	/**
+	 * Gives you a template of the typical ADD, CHANGE or REMOVE service request
+	 * for editor services, to create many requests that only differ in the
+	 * value. Create each request with <code>create(Arg.add(value))</code>,
+	 * <code>create(Arg.change(value))</code> or
+	 * <code>create(Arg.remove(value))</code>.
+	 *
+	 * @param ontologyURI
+	 *            The MY_URI of the class of Service ontology you want to call
+	 * @param path
+	 *            The property path from the root of the Service ontology
+	 *            concept to the exact concept you want to manage
+	 * @return The template of requests that will call the matching editor
+	 *         service, depending on the kind of argument
+	 */
+	public static RequestTemplate templateEdit(String ontologyURI, String[] path) {
+		return new RequestTemplate(ontologyURI, new Path[] { Path.parse(path) }, new Value[] { null });
+	}
+
 }
@@ -35,8 +35,10 @@ import org.universAAL.ontology.phThing.DeviceService;
 import org.universAAL.utilities.api.service.Arg;
 import org.universAAL.utilities.api.service.Output;
 import org.universAAL.utilities.api.service.Path;
+import org.universAAL.utilities.api.service.Value;
 import org.universAAL.utilities.api.service.Variable;
 import org.universAAL.utilities.api.service.low.Request;
+import org.universAAL.utilities.api.service.low.RequestTemplate;
 
 /**
  * This is a helper class for those who want to use the typical services of an
@@ -95,6 +97,31 @@ public class UtilSensor {
 	 */
 	public static ServiceProfile[] getServiceProfiles(String namespace, String ontologyURI, Sensor sensor)
 			throws InvalidOntologyUtilException {
+		// Cached by class, the instance is restricted on each copy
+		String key = ProfileCache.key(new String[] { "Sensor", namespace, ontologyURI, sensor.getClassURI() });
+		ServiceProfile[] profiles = ProfileCache.get(key);
+		if (profiles == null) {
+			checkOnOff(sensor);
+			profiles = buildServiceProfiles(namespace, ontologyURI, sensor.getClassURI());
+			ProfileCache.put(key, profiles);
+		}
+
+		MergedRestriction r = MergedRestriction.getFixedValueRestriction(DeviceService.PROP_CONTROLS, sensor);
+		profiles[0].getTheService().addInstanceLevelRestriction(r, new String[] { DeviceService.PROP_CONTROLS });
+
+		return profiles;
+	}
+
+	/**
+	 * Check that a sensor is of the on/off kind.
+	 *
+	 * @param sensor
+	 *            The ontology instance of the sensor.
+	 * @throws InvalidOntologyUtilException
+	 *             when an sensor is passed that is does not have StatusValue as
+	 *             type restriction of its HAS_VALUE property.
+	 */
+	private static void checkOnOff(Sensor sensor) throws InvalidOntologyUtilException {
 		try {
 			if (sensor.getOntClassInfo().getRestrictionsOnProp(Sensor.PROP_HAS_VALUE).getPropTypeURI()
 					.equals(StatusValue.MY_URI)) {
@@ -105,17 +132,30 @@ public class UtilSensor {
 			throw new InvalidOntologyUtilException("The Actuator ontology passed as parameter"
 					+ " misses some restriction on its HAS_VALUE" + " property. It must be of type StatusValue");
 		}
+	}
+
+	/**
+	 * Build the typical service profile of an on/off sensor service, without
+	 * restricting it to a sensor instance.
+	 *
+	 * @param namespace
+	 *            The namespace of your server.
+	 * @param ontologyURI
+	 *            The MY_URI of the class of DeviceService ontology.
+	 * @param sensorURI
+	 *            The MY_URI of the class of the sensor.
+	 * @return An array with the 1 typical service profiles
+	 */
+	private static ServiceProfile[] buildServiceProfiles(String namespace, String ontologyURI, String sensorURI) {
 		ServiceProfile[] profiles = new ServiceProfile[1];
 
 		PropertyPath ppath = new PropertyPath(null, true,
 				new String[] { DeviceService.PROP_CONTROLS, Sensor.PROP_HAS_VALUE });
 
 		ProcessInput input = new ProcessInput(namespace + IN_DEVICE);
-		input.setParameterType(sensor.getClassURI());
+		input.setParameterType(sensorURI);
 		input.setCardinality(1, 0);
 
-		MergedRestriction r = MergedRestriction.getFixedValueRestriction(DeviceService.PROP_CONTROLS, sensor);
-
 		Service getOnOff = (Service) OntologyManagement.getInstance().getResource(ontologyURI,
 				namespace + SERVICE_GET_ON_OFF);
 		profiles[0] = getOnOff.getProfile();
@@ -124,7 +164,6 @@ public class UtilSensor {
 		profiles[0].addOutput(output);
 		profiles[0].addSimpleOutputBinding(output, ppath.getThePath());
 		profiles[0].addInput(input);
-		profiles[0].getTheService().addInstanceLevelRestriction(r, new String[] { DeviceService.PROP_CONTROLS });
 
 		return profiles;
 	}
@@ -278,4 +317,24 @@ public class UtilSensor {
 		return requestGetOnOff(DeviceService.MY_URI, sensor, out);
 	}
 
+	/**
+	 * Gives you a template of the typical GET STATUS service request for
+	 * sensor services, to create many requests that only differ in the
+	 * sensor. Create each request with <code>create(Arg.in(sensor))</code>.
+	 *
+	 * @param ontologyURI
+	 *            The MY_URI of the class of Service ontology you want to call
+	 * @param out
+	 *            The returned value of the sensor GET service will be placed in
+	 *            this URI. Look for it there in the response.
+	 * @return The template of requests that will call the matching GET STATUS
+	 *         service of a sensor
+	 */
+	public static RequestTemplate templateGetOnOff(String ontologyURI, String out) {
+		return new RequestTemplate(ontologyURI,
+				new Path[] { Path.at(DeviceService.PROP_CONTROLS),
+						Path.at(DeviceService.PROP_CONTROLS).to(Sensor.PROP_HAS_VALUE) },
+				new Value[] { null, Arg.out(out) });
+	}
+
 }
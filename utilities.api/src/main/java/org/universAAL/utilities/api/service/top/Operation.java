@@ -0,0 +1,63 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api.service.top;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method of a {@link UtilCallee} as the handler of one of its
+ * services. The URIs are given as suffixes, to be prepended with the
+ * namespace of the callee, like the constants of the mid-level service
+ * utilities (e.g. UtilActuator.SERVICE_TURN_ON).
+ * <p/>
+ * The method can take no parameters, or one that receives the value of the
+ * input. What it returns is turned into the response: nothing or
+ * <code>true</code> is success, <code>false</code> is failure, a
+ * ServiceResponse is returned as is, and anything else is the value of the
+ * output.
+ *
+ * @author alfiva
+ *
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Operation {
+
+	/**
+	 * Suffix of the URI of the handled service.
+	 */
+	String service();
+
+	/**
+	 * Suffix of the URI of the input passed to the method. Empty for none.
+	 */
+	String input() default "";
+
+	/**
+	 * Suffix of the URI of the output returned by the method. Empty for none.
+	 */
+	String output() default "";
+
+}
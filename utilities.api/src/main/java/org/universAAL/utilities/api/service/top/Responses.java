@@ -0,0 +1,221 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api.service.top;
+
+import org.universAAL.middleware.service.CallStatus;
+import org.universAAL.middleware.service.ServiceResponse;
+import org.universAAL.middleware.service.owls.process.ProcessOutput;
+
+/**
+ * Catalogue of the responses to the common outcomes of a call, shared by all
+ * the callees in this package instead of creating a new one each time. These
+ * responses are sealed once built: adding outputs to them, or setting or
+ * changing any of their properties, throws an UnsupportedOperationException.
+ * Create a new ServiceResponse for responses with outputs.
+ *
+ * @author alfiva
+ *
+ */
+public final class Responses {
+
+	/**
+	 * The call succeeded, without outputs.
+	 */
+	public static final ServiceResponse SUCCEEDED = new Sealed(CallStatus.succeeded, null);
+
+	/**
+	 * The call failed, without further explanation.
+	 */
+	public static final ServiceResponse FAILURE = new Sealed(CallStatus.serviceSpecificFailure, null);
+
+	/**
+	 * The callee does not implement the requested operation.
+	 */
+	public static final ServiceResponse UNKNOWN_OPERATION = new Sealed(CallStatus.serviceSpecificFailure,
+			"The service requested has not been implemented in this simple callee");
+
+	/**
+	 * An input parameter of the call is missing or does not match.
+	 */
+	public static final ServiceResponse MISSING_INPUT = new Sealed(CallStatus.serviceSpecificFailure,
+			"An input parameter of the service requested is missing or does not match");
+
+	/**
+	 * The callee is busy handling other calls.
+	 */
+	public static final ServiceResponse BUSY = new Sealed(CallStatus.serviceSpecificFailure,
+			"The service is busy handling other calls");
+
+	/**
+	 * Disallow instantiating.
+	 */
+	private Responses() {
+	}
+
+	/**
+	 * Get the response to the outcome of an operation.
+	 *
+	 * @param success
+	 *            <code>true</code> if the operation succeeded.
+	 * @return SUCCEEDED or FAILURE.
+	 */
+	public static ServiceResponse of(boolean success) {
+		return success ? SUCCEEDED : FAILURE;
+	}
+
+	/**
+	 * A response that can not be modified once built.
+	 */
+	private static final class Sealed extends ServiceResponse {
+		/**
+		 * Whether the response can no longer be modified.
+		 */
+		private final boolean sealed;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param status
+		 *            The call status.
+		 * @param error
+		 *            The service specific error, or null if none.
+		 */
+		private Sealed(CallStatus status, String error) {
+			super(status);
+			if (error != null) {
+				super.addOutput(new ProcessOutput(PROP_SERVICE_SPECIFIC_ERROR, error));
+			}
+			this.sealed = true;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.universAAL.middleware.service.ServiceResponse#addOutput(org.universAAL
+		 * .middleware.service.owls.process.ProcessOutput)
+		 */
+		@Override
+		public void addOutput(ProcessOutput output) {
+			checkSealed();
+			super.addOutput(output);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.universAAL.middleware.rdf.Resource#setProperty(java.lang.String,
+		 * java.lang.Object)
+		 */
+		@Override
+		public boolean setProperty(String propURI, Object value) {
+			checkSealed();
+			return super.setProperty(propURI, value);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.universAAL.middleware.rdf.Resource#changeProperty(java.lang.String,
+		 * java.lang.Object)
+		 */
+		@Override
+		public boolean changeProperty(String propURI, Object value) {
+			checkSealed();
+			return super.changeProperty(propURI, value);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.universAAL.middleware.rdf.Resource#setPropertyPath(java.lang.String[],
+		 * java.lang.Object)
+		 */
+		@Override
+		public boolean setPropertyPath(String[] propPath, Object value) {
+			checkSealed();
+			return super.setPropertyPath(propPath, value);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.universAAL.middleware.rdf.Resource#setPropertyPath(java.lang.String[],
+		 * java.lang.Object, boolean)
+		 */
+		@Override
+		public boolean setPropertyPath(String[] propPath, Object value, boolean force) {
+			checkSealed();
+			return super.setPropertyPath(propPath, value, force);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.universAAL.middleware.rdf.Resource#addType(java.lang.String, boolean)
+		 */
+		@Override
+		public boolean addType(String typeURI, boolean blockFurtherTypes) {
+			checkSealed();
+			return super.addType(typeURI, blockFurtherTypes);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.universAAL.middleware.rdf.Resource#setResourceComment(java.lang.String)
+		 */
+		@Override
+		public void setResourceComment(String comment) {
+			checkSealed();
+			super.setResourceComment(comment);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.universAAL.middleware.rdf.Resource#setResourceLabel(java.lang.String)
+		 */
+		@Override
+		public void setResourceLabel(String label) {
+			checkSealed();
+			super.setResourceLabel(label);
+		}
+
+		/**
+		 * Refuse modifications once built.
+		 */
+		private void checkSealed() {
+			if (sealed) {
+				throw new UnsupportedOperationException("Shared responses can not be modified");
+			}
+		}
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api.service.top;
+
+/**
+ * This class is for internal use by the callees of this package only. It
+ * keeps the last on/off status read from a device, so that gets within the
+ * maximum staleness do not reach the device again. When the status is stale,
+ * only one of the concurrent gets reads it from the device, and the rest wait
+ * for and share its value.
+ *
+ * @author alfiva
+ *
+ */
+abstract class StatusCache {
+
+	/**
+	 * Time in milliseconds a read status is valid, or 0 not to cache it.
+	 */
+	private volatile long maxStaleness = 0;
+	/**
+	 * The last status.
+	 */
+	private boolean status;
+	/**
+	 * Time in milliseconds when the last status was read, or -1 if none.
+	 */
+	private long updated = -1;
+
+	/**
+	 * Read the status from the device.
+	 *
+	 * @return The status.
+	 */
+	abstract boolean load();
+
+	/**
+	 * Set the time a read status is valid.
+	 *
+	 * @param millis
+	 *            Time in milliseconds, or 0 not to cache the status.
+	 */
+	void setMaxStaleness(long millis) {
+		this.maxStaleness = millis;
+		synchronized (this) {
+			updated = -1;
+		}
+	}
+
+	/**
+	 * Get the status, from the cache if it is not stale, or from the device.
+	 *
+	 * @return The status.
+	 */
+	boolean get() {
+		long max = maxStaleness;
+		if (max <= 0) {
+			return load();
+		}
+		synchronized (this) {
+			// Callers waiting for a load get its value when they enter
+			if (updated < 0 || System.currentTimeMillis() - updated > max) {
+				status = load();
+				updated = System.currentTimeMillis();
+			}
+			return status;
+		}
+	}
+
+	/**
+	 * Set the status after a successful change of the device.
+	 *
+	 * @param value
+	 *            The new status.
+	 */
+	void set(boolean value) {
+		if (maxStaleness <= 0) {
+			return;
+		}
+		synchronized (this) {
+			status = value;
+			updated = System.currentTimeMillis();
+		}
+	}
+
+}
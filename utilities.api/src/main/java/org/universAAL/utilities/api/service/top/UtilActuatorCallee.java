@@ -21,14 +21,14 @@
  */
 package org.universAAL.utilities.api.service.top;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.universAAL.middleware.container.ModuleContext;
-import org.universAAL.middleware.service.CallStatus;
-import org.universAAL.middleware.service.ServiceCall;
-import org.universAAL.middleware.service.ServiceCallee;
-import org.universAAL.middleware.service.ServiceResponse;
-import org.universAAL.middleware.service.owls.process.ProcessOutput;
+import org.universAAL.middleware.service.owls.profile.ServiceProfile;
 import org.universAAL.ontology.device.Actuator;
 import org.universAAL.ontology.device.StatusValue;
+import org.universAAL.ontology.phThing.DeviceService;
 import org.universAAL.utilities.api.service.mid.InvalidOntologyUtilException;
 import org.universAAL.utilities.api.service.mid.UtilActuator;
 
@@ -38,22 +38,29 @@ import org.universAAL.utilities.api.service.mid.UtilActuator;
  * Classes extending this abstract class will be ServiceCallees which handle by
  * default these 3 services. Those considering using UtilActuator could take
  * advantage of this class if they want only to handle those 3 typical services
- * profiles and no more.
+ * profiles and no more. The batch services of UtilActuator (set on all, set
+ * off all) can be handled too, if the callee is a gateway for all the
+ * actuators of its class.
  *
  * @author alfiva
  *
  */
-public abstract class UtilActuatorCallee extends ServiceCallee {
+public abstract class UtilActuatorCallee extends UtilCallee {
 
 	/**
-	 * Namespace for auxiliary URIs used in this class.
+	 * URI of the controlled actuator.
 	 */
-	private String calleeNamespace;
+	private String actuatorURI;
 
 	/**
-	 * Default error response.
+	 * The last status read from the actuator.
 	 */
-	private ServiceResponse errorResponse = new ServiceResponse(CallStatus.serviceSpecificFailure);
+	private final StatusCache status = new StatusCache() {
+		@Override
+		boolean load() {
+			return executeGet();
+		}
+	};
 
 	/**
 	 * Default constructor of the class. Takes the same parameters needed by a
@@ -75,54 +82,144 @@ public abstract class UtilActuatorCallee extends ServiceCallee {
 	 */
 	public UtilActuatorCallee(ModuleContext context, String namespace, Actuator actuator)
 			throws InvalidOntologyUtilException {
-		super(context, UtilActuator.getServiceProfiles(namespace, actuator));
-		this.calleeNamespace = namespace;
+		this(context, namespace, actuator, false);
 	}
 
-	/*
-	 * (non-Javadoc)
+	/**
+	 * Constructor of the class that can also handle the batch services of
+	 * UtilActuator. Batch requests reach all the callees of the same class of
+	 * actuators that handle them, whatever actuators are in the list, so only
+	 * a single gateway callee per class of actuators should handle them, and
+	 * override executeOnAll() and executeOffAll() to switch all the actuators
+	 * in the list.
+	 * <p>
+	 * BE CAREFUL: This will only work with actuators that have StatusValue as
+	 * HAS_VALUE property. Others, like DimmerActuator, will throw an exception.
 	 *
-	 * @see
-	 * org.universAAL.middleware.service.ServiceCallee#handleCall(org.universAAL
-	 * .middleware.service.ServiceCall)
+	 * @param context
+	 *            The Module Context of universAAL
+	 * @param namespace
+	 *            The namespace of your server, ending with the character #
+	 * @param actuator
+	 *            The ontology instance of the actuator you are controlling. The
+	 *            more properties it has set, the better.
+	 * @param gateway
+	 *            <code>true</code> to handle the batch services too.
+	 * @throws InvalidOntologyUtilException
+	 *             when an actuator is passed that is does not have StatusValue
+	 *             as type restriction of its HAS_VALUE property
 	 */
-	@Override
-	public ServiceResponse handleCall(ServiceCall call) {
-		if (call == null) {
-			return null;
-		}
-		String operation = call.getProcessURI();
-		if (operation == null) {
-			return null;
-		}
-		if (operation.startsWith(calleeNamespace + UtilActuator.SERVICE_GET_ON_OFF)) {
-			boolean result = executeGet();
-			ServiceResponse response = new ServiceResponse(CallStatus.succeeded);
-			response.addOutput(new ProcessOutput(calleeNamespace + UtilActuator.OUT_GET_ON_OFF,
-					result ? StatusValue.Activated : StatusValue.NotActivated));
-			return response;
-		}
+	public UtilActuatorCallee(ModuleContext context, String namespace, Actuator actuator, boolean gateway)
+			throws InvalidOntologyUtilException {
+		super(context, namespace, gateway ? concat(UtilActuator.getServiceProfiles(namespace, actuator),
+				UtilActuator.getBatchServiceProfiles(namespace, DeviceService.MY_URI, actuator))
+				: UtilActuator.getServiceProfiles(namespace, actuator));
+		this.actuatorURI = actuator.getURI();
+	}
 
-		if (operation.startsWith(calleeNamespace + UtilActuator.SERVICE_TURN_OFF)) {
-			if (executeOff()) {
-				return new ServiceResponse(CallStatus.succeeded);
-			} else {
-				return errorResponse;
-			}
+	/**
+	 * Join two arrays of profiles.
+	 *
+	 * @param a
+	 *            The first profiles.
+	 * @param b
+	 *            The second profiles.
+	 * @return A new array with all the profiles.
+	 */
+	private static ServiceProfile[] concat(ServiceProfile[] a, ServiceProfile[] b) {
+		ServiceProfile[] all = new ServiceProfile[a.length + b.length];
+		System.arraycopy(a, 0, all, 0, a.length);
+		System.arraycopy(b, 0, all, a.length, b.length);
+		return all;
+	}
+
+	/**
+	 * Handle the GET STATUS service.
+	 *
+	 * @return The status of the actuator.
+	 */
+	@Operation(service = UtilActuator.SERVICE_GET_ON_OFF, output = UtilActuator.OUT_GET_ON_OFF)
+	private StatusValue get() {
+		// Null if called while the callee is still being built
+		boolean on = status == null ? executeGet() : status.get();
+		return on ? StatusValue.Activated : StatusValue.NotActivated;
+	}
+
+	/**
+	 * Set the maximum staleness of the status returned by GET STATUS. Gets
+	 * within that time of the last read of the actuator are answered with its
+	 * status instead of calling executeGet() again, and when it is stale,
+	 * concurrent gets share a single call to executeGet(). Successful SET ON and
+	 * SET OFF calls update the status.
+	 *
+	 * @param millis
+	 *            Time in milliseconds a read status is valid. By default it is
+	 *            0: every get calls executeGet().
+	 */
+	public void setMaxStaleness(long millis) {
+		status.setMaxStaleness(millis);
+	}
 
+	/**
+	 * Handle the SET OFF service.
+	 *
+	 * @return <code>true</code> if the actuator could be set to OFF
+	 */
+	@Operation(service = UtilActuator.SERVICE_TURN_OFF)
+	private boolean off() {
+		boolean done = executeOff();
+		if (done && status != null) {
+			status.set(false);
 		}
+		return done;
+	}
 
-		if (operation.startsWith(calleeNamespace + UtilActuator.SERVICE_TURN_ON)) {
-			if (executeOn()) {
-				return new ServiceResponse(CallStatus.succeeded);
-			} else {
-				return errorResponse;
-			}
+	/**
+	 * Handle the SET ON service.
+	 *
+	 * @return <code>true</code> if the actuator could be set to ON
+	 */
+	@Operation(service = UtilActuator.SERVICE_TURN_ON)
+	private boolean on() {
+		boolean done = executeOn();
+		if (done && status != null) {
+			status.set(true);
 		}
+		return done;
+	}
 
-		errorResponse.addOutput(new ProcessOutput(ServiceResponse.PROP_SERVICE_SPECIFIC_ERROR,
-				"The service requested has not been implemented in this simple editor callee"));
-		return errorResponse;
+	/**
+	 * Handle the SET OFF ALL service.
+	 *
+	 * @param in
+	 *            The input list of actuators.
+	 * @return <code>true</code> if all the actuators could be set to OFF
+	 */
+	@Operation(service = UtilActuator.SERVICE_TURN_OFF_ALL, input = UtilActuator.IN_DEVICES)
+	private boolean offAll(Object in) {
+		List<Actuator> actuators = getActuators(in);
+		boolean done = executeOffAll(actuators);
+		if (done && status != null && isMine(actuators)) {
+			status.set(false);
+		}
+		return done;
+	}
+
+	/**
+	 * Handle the SET ON ALL service.
+	 *
+	 * @param in
+	 *            The input list of actuators.
+	 * @return <code>true</code> if all the actuators could be set to ON
+	 */
+	@Operation(service = UtilActuator.SERVICE_TURN_ON_ALL, input = UtilActuator.IN_DEVICES)
+	private boolean onAll(Object in) {
+		List<Actuator> actuators = getActuators(in);
+		boolean done = executeOnAll(actuators);
+		if (done && status != null && isMine(actuators)) {
+			status.set(true);
+		}
+		return done;
 	}
 
 	/**
@@ -141,6 +238,91 @@ public abstract class UtilActuatorCallee extends ServiceCallee {
 	 */
 	public abstract boolean executeOff();
 
+	/**
+	 * When a SET ON ALL service request is received, this method is called
+	 * automatically, only in gateway callees. By default this calls
+	 * executeOn() only if the actuator of this callee is the only one in the
+	 * list, and fails otherwise, because it cannot switch the rest: a gateway
+	 * should override it to switch all the actuators in the list.
+	 *
+	 * @param actuators
+	 *            The actuators to set to ON.
+	 * @return <code>true</code> if all the actuators could be set to ON
+	 */
+	public boolean executeOnAll(List<Actuator> actuators) {
+		return isOnlyMine(actuators) && executeOn();
+	}
+
+	/**
+	 * When a SET OFF ALL service request is received, this method is called
+	 * automatically, only in gateway callees. By default this calls
+	 * executeOff() only if the actuator of this callee is the only one in the
+	 * list, and fails otherwise, because it cannot switch the rest: a gateway
+	 * should override it to switch all the actuators in the list.
+	 *
+	 * @param actuators
+	 *            The actuators to set to OFF.
+	 * @return <code>true</code> if all the actuators could be set to OFF
+	 */
+	public boolean executeOffAll(List<Actuator> actuators) {
+		return isOnlyMine(actuators) && executeOff();
+	}
+
+	/**
+	 * Tell if the actuator of this callee is in a list.
+	 *
+	 * @param actuators
+	 *            The list of actuators.
+	 * @return <code>true</code> if it is in the list
+	 */
+	private boolean isMine(List<Actuator> actuators) {
+		for (int i = 0; i < actuators.size(); i++) {
+			if (actuators.get(i).getURI().equals(actuatorURI)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Tell if the actuator of this callee is the only one in a list.
+	 *
+	 * @param actuators
+	 *            The list of actuators.
+	 * @return <code>true</code> if the list is not empty and has no other
+	 *         actuator
+	 */
+	private boolean isOnlyMine(List<Actuator> actuators) {
+		for (int i = 0; i < actuators.size(); i++) {
+			if (!actuators.get(i).getURI().equals(actuatorURI)) {
+				return false;
+			}
+		}
+		return !actuators.isEmpty();
+	}
+
+	/**
+	 * Get the list of actuators passed as input of a batch call.
+	 *
+	 * @param in
+	 *            The input of the batch call.
+	 * @return The actuators, maybe none.
+	 */
+	private static List<Actuator> getActuators(Object in) {
+		List<Actuator> actuators = new ArrayList<Actuator>();
+		if (in instanceof List) {
+			List<?> list = (List<?>) in;
+			for (int i = 0; i < list.size(); i++) {
+				if (list.get(i) instanceof Actuator) {
+					actuators.add((Actuator) list.get(i));
+				}
+			}
+		} else if (in instanceof Actuator) {
+			actuators.add((Actuator) in);
+		}
+		return actuators;
+	}
+
 	/**
 	 * When a GET STATUS service request is received, this method is called
 	 * automatically.
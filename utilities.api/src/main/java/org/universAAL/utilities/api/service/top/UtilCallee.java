@@ -0,0 +1,325 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api.service.top;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.universAAL.middleware.container.ModuleContext;
+import org.universAAL.middleware.container.utils.LogUtils;
+import org.universAAL.middleware.service.CallStatus;
+import org.universAAL.middleware.service.ServiceCall;
+import org.universAAL.middleware.service.ServiceCallee;
+import org.universAAL.middleware.service.ServiceResponse;
+import org.universAAL.middleware.service.owls.process.ProcessOutput;
+import org.universAAL.middleware.service.owls.profile.ServiceProfile;
+import org.universAAL.utilities.api.Bulkhead;
+
+/**
+ * This is an abstract base for ServiceCallees whose services are handled by
+ * methods marked with {@link Operation}. The marked methods are found once,
+ * when the callee is created, and associated to the exact process URIs of its
+ * profiles, together with the URIs of their input and output. Each call is
+ * then dispatched to its handler with a single lookup, however many services
+ * the callee offers.
+ * <p/>
+ * Example: A callee of the UtilActuator services.
+ * <code>
+ * <p/>public class MyCallee extends UtilCallee {
+ * <p/>	public MyCallee(ModuleContext ctx, Actuator a) throws InvalidOntologyUtilException {
+ * <p/>		super(ctx, NAMESPACE, UtilActuator.getServiceProfiles(NAMESPACE, a));
+ * <p/>	}
+ * <p/>	&#64;Operation(service = UtilActuator.SERVICE_TURN_ON)
+ * <p/>	public boolean on() {...}
+ * <p/>	...
+ * <p/>}
+ * </code>
+ * <p/>
+ *
+ * @author alfiva
+ *
+ */
+public abstract class UtilCallee extends ServiceCallee {
+
+	/**
+	 * Namespace of the services, inputs and outputs of this callee.
+	 */
+	private final String calleeNamespace;
+
+	/**
+	 * The universAAL Module Context, for logging.
+	 */
+	private final ModuleContext calleeContext;
+
+	/**
+	 * Handler of each process URI. It is null until the callee is built.
+	 */
+	private volatile Map<String, Handler> handlers;
+
+	/**
+	 * The limit of concurrent calls, or null if unlimited.
+	 */
+	private volatile Bulkhead bulkhead;
+
+	/**
+	 * Create the callee, registering the given profiles, and associate them
+	 * to the marked methods of this class. The callee joins the bus without
+	 * profiles, and they are only registered once the marked methods are
+	 * found valid, so no call arrives before the callee is built. If a method
+	 * is not valid, the callee is closed and the exception thrown.
+	 *
+	 * @param context
+	 *            The Module Context of universAAL
+	 * @param namespace
+	 *            The namespace of your server, ending with the character #,
+	 *            prepended to the suffixes of the operations.
+	 * @param profiles
+	 *            The profiles of the services of this callee.
+	 * @throws IllegalArgumentException
+	 *             If a marked method does not take its input properly.
+	 */
+	protected UtilCallee(ModuleContext context, String namespace, ServiceProfile[] profiles) {
+		// The marked methods of the subclass can only be found after super()
+		super(context, new ServiceProfile[0]);
+		this.calleeNamespace = namespace;
+		this.calleeContext = context;
+		try {
+			handlers = buildHandlers(getClass(), namespace, profiles);
+		} catch (IllegalArgumentException e) {
+			close();
+			throw e;
+		}
+		addNewServiceProfiles(profiles);
+	}
+
+	/**
+	 * Find the marked methods of a class and associate them to the process
+	 * URIs of the profiles.
+	 *
+	 * @param type
+	 *            The class of the callee.
+	 * @param namespace
+	 *            The namespace of the callee.
+	 * @param profiles
+	 *            The profiles of the services of the callee.
+	 * @return The handler of each process URI.
+	 * @throws IllegalArgumentException
+	 *             If a marked method does not take its input properly.
+	 */
+	private static Map<String, Handler> buildHandlers(Class<?> type, String namespace, ServiceProfile[] profiles) {
+		Map<String, Handler> byService = new HashMap<String, Handler>();
+		Class<?> c = type;
+		while (c != null && c != UtilCallee.class) {
+			Method[] methods = c.getDeclaredMethods();
+			for (int i = 0; i < methods.length; i++) {
+				Operation op = methods[i].getAnnotation(Operation.class);
+				String uri = op == null ? null : namespace + op.service();
+				// Overriding methods, found first, take precedence
+				if (op != null && !byService.containsKey(uri)) {
+					methods[i].setAccessible(true);
+					byService.put(uri, new Handler(methods[i], op, namespace));
+				}
+			}
+			c = c.getSuperclass();
+		}
+		Map<String, Handler> table = new HashMap<String, Handler>();
+		for (int i = 0; i < profiles.length; i++) {
+			Handler h = byService.get(profiles[i].getTheService().getURI());
+			if (h != null) {
+				table.put(profiles[i].getProcessURI(), h);
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Get the namespace of the services, inputs and outputs of this callee.
+	 *
+	 * @return The namespace.
+	 */
+	protected String getNamespace() {
+		return calleeNamespace;
+	}
+
+	/**
+	 * Limit the number of calls handled at once by this callee. Calls beyond
+	 * the limits wait shortly for room and are then rejected with
+	 * <code>serviceSpecificFailure</code> call status, without reaching the
+	 * handlers.
+	 *
+	 * @param b
+	 *            The limits of concurrent calls, or null to remove them.
+	 */
+	public void setBulkhead(Bulkhead b) {
+		this.bulkhead = b;
+	}
+
+	/**
+	 * Get the limits of concurrent calls to this callee, with their counts of
+	 * calls in flight and rejected.
+	 *
+	 * @return The limits, or null if unlimited.
+	 */
+	public Bulkhead getBulkhead() {
+		return bulkhead;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.universAAL.middleware.service.ServiceCallee#handleCall(org.universAAL
+	 * .middleware.service.ServiceCall)
+	 */
+	@Override
+	public ServiceResponse handleCall(ServiceCall call) {
+		if (call == null) {
+			return null;
+		}
+		String operation = call.getProcessURI();
+		if (operation == null) {
+			return null;
+		}
+		Map<String, Handler> table = handlers;
+		if (table == null) {
+			// Not built yet
+			return Responses.BUSY;
+		}
+		Handler h = table.get(operation);
+		if (h == null) {
+			return Responses.UNKNOWN_OPERATION;
+		}
+		Bulkhead b = bulkhead;
+		if (b == null) {
+			return h.handle(this, call);
+		}
+		if (!b.enter(operation)) {
+			return Bulkhead.rejected();
+		}
+		try {
+			return h.handle(this, call);
+		} finally {
+			b.exit(operation);
+		}
+	}
+
+	/**
+	 * A marked method with the URIs of its input and output.
+	 */
+	private static final class Handler {
+		/**
+		 * The method.
+		 */
+		private final Method method;
+		/**
+		 * URI of the input, or null.
+		 */
+		private final String inputURI;
+		/**
+		 * Type of the parameter of the method, or null if it takes none.
+		 */
+		private final Class<?> inputType;
+		/**
+		 * URI of the output, or null.
+		 */
+		private final String outputURI;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param method
+		 *            The method.
+		 * @param op
+		 *            The mark of the method.
+		 * @param namespace
+		 *            The namespace of the callee.
+		 */
+		private Handler(Method method, Operation op, String namespace) {
+			Class<?>[] params = method.getParameterTypes();
+			if (params.length > 1 || (params.length == 1 && op.input().length() == 0)) {
+				throw new IllegalArgumentException("Operation " + method.getName()
+						+ " must take no parameters, or one for its input");
+			}
+			this.method = method;
+			this.inputURI = op.input().length() == 0 ? null : namespace + op.input();
+			this.inputType = params.length == 0 ? null : params[0];
+			this.outputURI = op.output().length() == 0 ? null : namespace + op.output();
+		}
+
+		/**
+		 * Handle a call with the method.
+		 *
+		 * @param callee
+		 *            The callee owning the method.
+		 * @param call
+		 *            The call.
+		 * @return The response to the call.
+		 */
+		private ServiceResponse handle(UtilCallee callee, ServiceCall call) {
+			Object[] args = new Object[0];
+			if (inputURI != null) {
+				Object input = call.getInputValue(inputURI);
+				if (input == null) {
+					return Responses.MISSING_INPUT;
+				}
+				if (inputType != null) {
+					if (inputType == List.class && !(input instanceof List)) {
+						List<Object> single = new ArrayList<Object>(1);
+						single.add(input);
+						input = single;
+					}
+					if (!inputType.isInstance(input)) {
+						return Responses.MISSING_INPUT;
+					}
+					args = new Object[] { input };
+				}
+			}
+			Object result;
+			try {
+				result = method.invoke(callee, args);
+			} catch (IllegalAccessException e) {
+				return Responses.FAILURE;
+			} catch (InvocationTargetException e) {
+				LogUtils.logError(callee.calleeContext, callee.getClass(), "handleCall",
+						new Object[] { "Operation ", method.getName(), " failed" }, e.getCause());
+				return Responses.FAILURE;
+			}
+			if (result instanceof ServiceResponse) {
+				return (ServiceResponse) result;
+			}
+			if (result instanceof Boolean && method.getReturnType() == boolean.class) {
+				return Responses.of(((Boolean) result).booleanValue());
+			}
+			if (outputURI == null) {
+				return Responses.SUCCEEDED;
+			}
+			ServiceResponse response = new ServiceResponse(CallStatus.succeeded);
+			response.addOutput(new ProcessOutput(outputURI, result));
+			return response;
+		}
+	}
+
+}
@@ -23,11 +23,6 @@ package org.universAAL.utilities.api.service.top;
 
 import org.universAAL.middleware.container.ModuleContext;
 import org.universAAL.middleware.rdf.Resource;
-import org.universAAL.middleware.service.CallStatus;
-import org.universAAL.middleware.service.ServiceCall;
-import org.universAAL.middleware.service.ServiceCallee;
-import org.universAAL.middleware.service.ServiceResponse;
-import org.universAAL.middleware.service.owls.process.ProcessOutput;
 import org.universAAL.utilities.api.service.mid.UtilEditor;
 
 /**
@@ -41,17 +36,7 @@ import org.universAAL.utilities.api.service.mid.UtilEditor;
  * @author alfiva
  *
  */
-public abstract class UtilEditorCallee extends ServiceCallee {
-
-	/**
-	 * Namespace for auxiliary URIs used in this class.
-	 */
-	private String calleeNamespace;
-
-	/**
-	 * Default error response when an input parameter does not match.
-	 */
-	private static final ServiceResponse ERROR_INPUT = new ServiceResponse(CallStatus.serviceSpecificFailure);
+public abstract class UtilEditorCallee extends UtilCallee {
 
 	/**
 	 * Default constructor of the class. Takes the same parameters needed by a
@@ -73,77 +58,55 @@ public abstract class UtilEditorCallee extends ServiceCallee {
 	 */
 	public UtilEditorCallee(ModuleContext context, String namespace, String ontologyURI, String[] path,
 			String editedURI) {
-		super(context, UtilEditor.getServiceProfiles(namespace, ontologyURI, path, editedURI));
-		this.calleeNamespace = namespace;
+		super(context, namespace, UtilEditor.getServiceProfiles(namespace, ontologyURI, path, editedURI));
 	}
 
-	/*
-	 * (non-Javadoc)
+	/**
+	 * Handle the GET service.
 	 *
-	 * @see
-	 * org.universAAL.middleware.service.ServiceCallee#handleCall(org.universAAL
-	 * .middleware.service.ServiceCall)
+	 * @param input
+	 *            The input Resource.
+	 * @return The complete Resource.
+	 */
+	@Operation(service = UtilEditor.SERVICE_GET, input = UtilEditor.IN_GET, output = UtilEditor.OUT_GET)
+	private Resource get(Resource input) {
+		return executeGet(input);
+	}
+
+	/**
+	 * Handle the ADD service.
+	 *
+	 * @param input
+	 *            The input Resource.
+	 * @return <code>true</code> if the addition succeeded.
+	 */
+	@Operation(service = UtilEditor.SERVICE_ADD, input = UtilEditor.IN_ADD)
+	private boolean add(Resource input) {
+		return executeAdd(input);
+	}
+
+	/**
+	 * Handle the CHANGE service.
+	 *
+	 * @param input
+	 *            The input Resource.
+	 * @return <code>true</code> if the change succeeded.
+	 */
+	@Operation(service = UtilEditor.SERVICE_CHANGE, input = UtilEditor.IN_CHANGE)
+	private boolean change(Resource input) {
+		return executeChange(input);
+	}
+
+	/**
+	 * Handle the REMOVE service.
+	 *
+	 * @param input
+	 *            The input Resource.
+	 * @return <code>true</code> if the removal succeeded.
 	 */
-	@Override
-	public ServiceResponse handleCall(ServiceCall call) {
-		if (call == null) {
-			return null;
-		}
-		String operation = call.getProcessURI();
-		if (operation == null) {
-			return null;
-		}
-		if (operation.startsWith(calleeNamespace + UtilEditor.SERVICE_GET)) {
-			Object input = call.getInputValue(calleeNamespace + UtilEditor.IN_GET);
-			if (input == null) {
-				return ERROR_INPUT;
-			}
-			Resource result = executeGet((Resource) input);
-			ServiceResponse response = new ServiceResponse(CallStatus.succeeded);
-			response.addOutput(new ProcessOutput(calleeNamespace + UtilEditor.OUT_GET, result));
-			return response;
-		}
-
-		if (operation.startsWith(calleeNamespace + UtilEditor.SERVICE_ADD)) {
-			Object input = call.getInputValue(calleeNamespace + UtilEditor.IN_ADD);
-			if (input == null) {
-				return ERROR_INPUT;
-			}
-			ServiceResponse response = new ServiceResponse(CallStatus.serviceSpecificFailure);
-			if (executeAdd((Resource) input)) {
-				response = new ServiceResponse(CallStatus.succeeded);
-			}
-			return response;
-		}
-
-		if (operation.startsWith(calleeNamespace + UtilEditor.SERVICE_CHANGE)) {
-			Object input = call.getInputValue(calleeNamespace + UtilEditor.IN_CHANGE);
-			if (input == null) {
-				return ERROR_INPUT;
-			}
-			ServiceResponse response = new ServiceResponse(CallStatus.serviceSpecificFailure);
-			if (executeChange((Resource) input)) {
-				response = new ServiceResponse(CallStatus.succeeded);
-			}
-			return response;
-		}
-
-		if (operation.startsWith(calleeNamespace + UtilEditor.SERVICE_REMOVE)) {
-			Object input = call.getInputValue(calleeNamespace + UtilEditor.IN_REMOVE);
-			if (input == null) {
-				return ERROR_INPUT;
-			}
-			ServiceResponse response = new ServiceResponse(CallStatus.serviceSpecificFailure);
-			if (executeRemove((Resource) input)) {
-				response = new ServiceResponse(CallStatus.succeeded);
-			}
-			return response;
-		}
-
-		ServiceResponse response = new ServiceResponse(CallStatus.serviceSpecificFailure);
-		response.addOutput(new ProcessOutput(ServiceResponse.PROP_SERVICE_SPECIFIC_ERROR,
-				"The service requested has not been implemented in this simple editor callee"));
-		return response;
+	@Operation(service = UtilEditor.SERVICE_REMOVE, input = UtilEditor.IN_REMOVE)
+	private boolean remove(Resource input) {
+		return executeRemove(input);
 	}
 
 	/**
@@ -22,11 +22,6 @@
 package org.universAAL.utilities.api.service.top;
 
 import org.universAAL.middleware.container.ModuleContext;
-import org.universAAL.middleware.service.CallStatus;
-import org.universAAL.middleware.service.ServiceCall;
-import org.universAAL.middleware.service.ServiceCallee;
-import org.universAAL.middleware.service.ServiceResponse;
-import org.universAAL.middleware.service.owls.process.ProcessOutput;
 import org.universAAL.ontology.device.Sensor;
 import org.universAAL.ontology.device.StatusValue;
 import org.universAAL.utilities.api.service.mid.InvalidOntologyUtilException;
@@ -43,17 +38,17 @@ import org.universAAL.utilities.api.service.mid.UtilSensor;
  * @author alfiva
  *
  */
-public abstract class UtilSensorCallee extends ServiceCallee {
+public abstract class UtilSensorCallee extends UtilCallee {
 
 	/**
-	 * Namespace for auxiliary URIs used in this class.
+	 * The last status read from the sensor.
 	 */
-	private String calleeNamespace;
-
-	/**
-	 * Default error response.
-	 */
-	private ServiceResponse errorResponse = new ServiceResponse(CallStatus.serviceSpecificFailure);
+	private final StatusCache status = new StatusCache() {
+		@Override
+		boolean load() {
+			return executeGet();
+		}
+	};
 
 	/**
 	 * Default constructor of the class. Takes the same parameters needed by a
@@ -75,37 +70,33 @@ public abstract class UtilSensorCallee extends ServiceCallee {
 	 */
 	public UtilSensorCallee(ModuleContext context, String namespace, Sensor sensor)
 			throws InvalidOntologyUtilException {
-		super(context, UtilSensor.getServiceProfiles(namespace, sensor));
-		this.calleeNamespace = namespace;
+		super(context, namespace, UtilSensor.getServiceProfiles(namespace, sensor));
 	}
 
-	/*
-	 * (non-Javadoc)
+	/**
+	 * Handle the GET STATUS service.
 	 *
-	 * @see
-	 * org.universAAL.middleware.service.ServiceCallee#handleCall(org.universAAL
-	 * .middleware.service.ServiceCall)
+	 * @return The status of the sensor.
 	 */
-	@Override
-	public ServiceResponse handleCall(ServiceCall call) {
-		if (call == null) {
-			return null;
-		}
-		String operation = call.getProcessURI();
-		if (operation == null) {
-			return null;
-		}
-		if (operation.startsWith(calleeNamespace + UtilSensor.SERVICE_GET_ON_OFF)) {
-			boolean result = executeGet();
-			ServiceResponse response = new ServiceResponse(CallStatus.succeeded);
-			response.addOutput(new ProcessOutput(calleeNamespace + UtilSensor.OUT_GET_ON_OFF,
-					result ? StatusValue.Activated : StatusValue.NotActivated));
-			return response;
-		}
+	@Operation(service = UtilSensor.SERVICE_GET_ON_OFF, output = UtilSensor.OUT_GET_ON_OFF)
+	private StatusValue get() {
+		// Null if called while the callee is still being built
+		boolean on = status == null ? executeGet() : status.get();
+		return on ? StatusValue.Activated : StatusValue.NotActivated;
+	}
 
-		errorResponse.addOutput(new ProcessOutput(ServiceResponse.PROP_SERVICE_SPECIFIC_ERROR,
-				"The service requested has not been implemented in this simple editor callee"));
-		return errorResponse;
+	/**
+	 * Set the maximum staleness of the status returned by GET STATUS. Gets
+	 * within that time of the last read of the sensor are answered with its
+	 * status instead of calling executeGet() again, and when it is stale,
+	 * concurrent gets share a single call to executeGet().
+	 *
+	 * @param millis
+	 *            Time in milliseconds a read status is valid. By default it is
+	 *            0: every get calls executeGet().
+	 */
+	public void setMaxStaleness(long millis) {
+		status.setMaxStaleness(millis);
 	}
 
 	/**
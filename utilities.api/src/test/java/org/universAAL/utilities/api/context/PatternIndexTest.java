@@ -0,0 +1,157 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api.context;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.universAAL.middleware.context.ContextEvent;
+import org.universAAL.middleware.context.ContextEventPattern;
+import org.universAAL.middleware.rdf.Resource;
+
+/**
+ * Compares the matching of PatternIndex with checking every pattern one by
+ * one, both in results and in time. The times are only printed, since they
+ * depend on the machine.
+ *
+ * @author alfiva
+ *
+ */
+public class PatternIndexTest extends TestCase {
+
+	/**
+	 * Namespace of the test resources.
+	 */
+	private static final String NS = "http://ontology.universAAL.org/PatternIndexTest.owl#";
+	/**
+	 * Number of distinct predicates.
+	 */
+	private static final int PREDICATES = 1000;
+	/**
+	 * Number of events to match.
+	 */
+	private static final int EVENTS = 2000;
+
+	/**
+	 * The patterns, in the order they are added.
+	 */
+	private List<ContextEventPattern> patterns;
+	/**
+	 * The events to match.
+	 */
+	private ContextEvent[] events;
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		patterns = new ArrayList<ContextEventPattern>();
+		for (int i = 0; i < PREDICATES; i++) {
+			patterns.add(new Pattern((String) null, NS + "p" + i, (String) null));
+		}
+		// Patterns without fixed predicate, which are candidates for all
+		patterns.add(new Pattern((String) null, null, (String) null));
+		patterns.add(new Pattern((String) null, null, Integer.valueOf(7)));
+		events = new ContextEvent[EVENTS];
+		for (int i = 0; i < EVENTS; i++) {
+			Resource subject = new Resource(NS + "s" + (i % 50));
+			String predicate = NS + "p" + (i * 31 % (PREDICATES + 100));
+			subject.setProperty(predicate, Integer.valueOf(i % 10));
+			events[i] = new ContextEvent(subject, predicate);
+		}
+	}
+
+	/**
+	 * The index must find the same values, in the same order, as checking
+	 * every pattern.
+	 */
+	public void testSameAsLinear() {
+		PatternIndex<Integer> index = build();
+		for (int i = 0; i < events.length; i++) {
+			assertEquals(linear(events[i]), index.match(events[i]));
+		}
+	}
+
+	/**
+	 * Time matching all the events with the index and checking every
+	 * pattern.
+	 */
+	public void testBenchmark() {
+		PatternIndex<Integer> index = build();
+		// Warm up both ways before measuring
+		for (int i = 0; i < events.length; i++) {
+			index.match(events[i]);
+			linear(events[i]);
+		}
+		long start = System.nanoTime();
+		int found = 0;
+		for (int i = 0; i < events.length; i++) {
+			found += index.match(events[i]).size();
+		}
+		long indexed = System.nanoTime() - start;
+		start = System.nanoTime();
+		int expected = 0;
+		for (int i = 0; i < events.length; i++) {
+			expected += linear(events[i]).size();
+		}
+		long scanned = System.nanoTime() - start;
+		assertEquals(expected, found);
+		System.out.println("PatternIndex: " + patterns.size() + " patterns, " + events.length + " events. Index: "
+				+ indexed / events.length + " ns/event, linear: " + scanned / events.length + " ns/event");
+	}
+
+	/**
+	 * Build an index of the patterns, each associated to its position.
+	 *
+	 * @return The index.
+	 */
+	private PatternIndex<Integer> build() {
+		PatternIndex<Integer> index = new PatternIndex<Integer>();
+		for (int i = 0; i < patterns.size(); i++) {
+			index.add(patterns.get(i), Integer.valueOf(i));
+		}
+		return index;
+	}
+
+	/**
+	 * Match an event by checking every pattern.
+	 *
+	 * @param event
+	 *            The event.
+	 * @return The positions of the matching patterns, in order.
+	 */
+	private List<Integer> linear(ContextEvent event) {
+		List<Integer> result = new ArrayList<Integer>();
+		for (int i = 0; i < patterns.size(); i++) {
+			if (patterns.get(i).matches(event)) {
+				result.add(Integer.valueOf(i));
+			}
+		}
+		return result;
+	}
+
+}
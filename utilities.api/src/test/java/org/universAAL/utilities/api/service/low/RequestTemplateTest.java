@@ -0,0 +1,132 @@
+/*
+	Copyright 2008 ITACA-SABIEN, http://www.sabien.upv.es
+	Instituto Tecnologico de Aplicaciones de Comunicacion
+	Avanzadas - Grupo Tecnologias para la Salud y el
+	Bienestar (TSB)
+
+	See the NOTICE file distributed with this work for additional
+	information regarding copyright ownership
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	  http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package org.universAAL.utilities.api.service.low;
+
+import junit.framework.TestCase;
+
+import org.universAAL.middleware.container.ModuleContext;
+import org.universAAL.middleware.container.JUnit.JUnitModuleContext;
+import org.universAAL.middleware.owl.DataRepOntology;
+import org.universAAL.middleware.owl.OntologyManagement;
+import org.universAAL.middleware.rdf.Resource;
+import org.universAAL.middleware.service.owl.Service;
+import org.universAAL.middleware.service.owl.ServiceBusOntology;
+import org.universAAL.ontology.location.LocationOntology;
+import org.universAAL.ontology.phThing.DeviceService;
+import org.universAAL.ontology.phThing.PhThingOntology;
+import org.universAAL.ontology.shape.ShapeOntology;
+import org.universAAL.utilities.api.service.Arg;
+import org.universAAL.utilities.api.service.Path;
+import org.universAAL.utilities.api.service.Value;
+
+/**
+ * Compares creating many Requests from a RequestTemplate with building each
+ * Request from scratch, the way the UtilActuator request methods do. The
+ * times are only printed, since they depend on the machine.
+ *
+ * @author alfiva
+ *
+ */
+public class RequestTemplateTest extends TestCase {
+
+	/**
+	 * Namespace of the test resources.
+	 */
+	private static final String NS = "http://ontology.universAAL.org/RequestTemplateTest.owl#";
+	/**
+	 * Property set in the requests.
+	 */
+	private static final String PROP_VALUE = NS + "hasValue";
+	/**
+	 * Number of requests to create each way.
+	 */
+	private static final int REQUESTS = 20000;
+
+	/**
+	 * Module context for registering the ontologies.
+	 */
+	private static ModuleContext context;
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		if (context == null) {
+			context = new JUnitModuleContext();
+			OntologyManagement.getInstance().register(context, new DataRepOntology());
+			OntologyManagement.getInstance().register(context, new ServiceBusOntology());
+			OntologyManagement.getInstance().register(context, new LocationOntology());
+			OntologyManagement.getInstance().register(context, new ShapeOntology());
+			OntologyManagement.getInstance().register(context, new PhThingOntology());
+		}
+	}
+
+	/**
+	 * Time creating the requests from a template and building them one by
+	 * one.
+	 */
+	public void testBenchmark() {
+		RequestTemplate template = new RequestTemplate(DeviceService.MY_URI,
+				new Path[] { Path.at(DeviceService.PROP_CONTROLS),
+						Path.at(DeviceService.PROP_CONTROLS).to(PROP_VALUE) },
+				new Value[] { null, Arg.change(Boolean.TRUE) });
+		Resource[] devices = new Resource[REQUESTS];
+		for (int i = 0; i < REQUESTS; i++) {
+			devices[i] = new Resource(NS + "device" + i);
+		}
+		// Warm up both ways before measuring
+		for (int i = 0; i < REQUESTS; i++) {
+			assertNotNull(template.create(Arg.in(devices[i])));
+			assertNotNull(build(devices[i]));
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < REQUESTS; i++) {
+			template.create(Arg.in(devices[i]));
+		}
+		long reused = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int i = 0; i < REQUESTS; i++) {
+			build(devices[i]);
+		}
+		long built = System.nanoTime() - start;
+		System.out.println("RequestTemplate: " + REQUESTS + " requests. Template: " + reused / REQUESTS
+				+ " ns/request, built each time: " + built / REQUESTS + " ns/request");
+	}
+
+	/**
+	 * Build a request from scratch, like the template does.
+	 *
+	 * @param device
+	 *            The device to put in the request.
+	 * @return The new Request.
+	 */
+	private Request build(Resource device) {
+		Request req = new Request((Service) OntologyManagement.getInstance().getResource(DeviceService.MY_URI, null));
+		req.put(Path.at(DeviceService.PROP_CONTROLS), Arg.in(device));
+		req.put(Path.at(DeviceService.PROP_CONTROLS).to(PROP_VALUE), Arg.change(Boolean.TRUE));
+		return req;
+	}
+
+}